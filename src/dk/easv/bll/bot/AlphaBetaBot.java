@@ -0,0 +1,66 @@
+package dk.easv.bll.bot;
+
+import dk.easv.bll.bot.search.AlphaBetaSearch;
+import dk.easv.bll.bot.search.TimeManager;
+import dk.easv.bll.bot.search.TranspositionTable;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+/**
+ * Iterative deepening alpha-beta search on one core, within the time per move.
+ * A TimeManager decides when to stop deepening.
+ *
+ * The search plays moves through the game rules and keeps its results in a
+ * transposition table that lives as long as the bot, so positions met again in
+ * later moves of the same game start from what is already known.
+ */
+public class AlphaBetaBot implements IBot {
+    private static final String BOT_NAME = "AlphaBetaBot";
+    private static final long TABLE_BYTES = 64L << 20;
+    private static final int MAX_DEPTH = 82;
+
+    private final TimeManager time = new TimeManager();
+    private AlphaBetaSearch search;
+
+    private volatile int lastDepth;
+    private volatile double lastNodesPerSecond;
+
+    @Override
+    public IMove doMove(IGameState state) {
+        time.start(state);
+        if (search == null) {
+            // Created with the first move, so a bot that never plays holds no table,
+            // and only as large as can be allocated well within the move's time
+            long bytes = Math.min(Math.min(TABLE_BYTES, Runtime.getRuntime().maxMemory() / 8),
+                    TimeManager.allocationBudget(state.getTimePerMove()));
+            search = new AlphaBetaSearch(new TranspositionTable(bytes));
+            search.getMoveOrdering().seed(new LocalPrioritisedListBot().getPreferredMoves());
+        }
+        search.setPosition(state);
+        int move = search.iterate(time.getSoftDeadline(), time.getHardDeadline(), 1, MAX_DEPTH);
+
+        lastDepth = search.getCompletedDepth();
+        lastNodesPerSecond = search.getNodes() * 1e9 / time.getElapsedNanos();
+        return Move.of(move);
+    }
+
+    /**
+     * @return the deepest search completed for the last move
+     */
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    /**
+     * @return positions searched per second for the last move
+     */
+    public double getLastNodesPerSecond() {
+        return lastNodesPerSecond;
+    }
+
+    @Override
+    public String getBotName() {
+        return BOT_NAME;
+    }
+}
@@ -0,0 +1,47 @@
+package dk.easv.bll.bot;
+
+import dk.easv.bll.bot.search.TimeManager;
+import dk.easv.bll.game.BatchPlayout;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+/**
+ * Flat Monte Carlo on one core: plays random games after every legal move until a
+ * TimeManager's soft stop, and plays the move with the best average result.
+ *
+ * The games are played in batches by dk.easv.bll.game.BatchPlayout, which runs
+ * many games side by side and is faster than playing them one at a time.
+ */
+public class FlatMonteCarloBot implements IBot {
+    private static final String BOT_NAME = "FlatMonteCarloBot";
+
+    private final TimeManager time = new TimeManager();
+    private final BatchPlayout playout = new BatchPlayout(System.nanoTime());
+
+    private volatile double lastPlayoutsPerSecond;
+
+    @Override
+    public IMove doMove(IGameState state) {
+        time.start(state);
+
+        playout.load(state);
+        playout.run(1); // at least one batch, so every move has a result
+        playout.runUntil(time.getSoftDeadline());
+
+        lastPlayoutsPerSecond = playout.getPlayouts() * 1e9 / time.getElapsedNanos();
+        return Move.of(playout.getBestMove());
+    }
+
+    /**
+     * @return random games played per second for the last move
+     */
+    public double getLastPlayoutsPerSecond() {
+        return lastPlayoutsPerSecond;
+    }
+
+    @Override
+    public String getBotName() {
+        return BOT_NAME;
+    }
+}
@@ -0,0 +1,61 @@
+package dk.easv.bll.bot;
+
+import dk.easv.bll.bot.search.LazySMPSearch;
+import dk.easv.bll.bot.search.TimeManager;
+import dk.easv.bll.bot.search.TranspositionTable;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+/**
+ * AlphaBetaBot on all available cores: every core searches the position with one
+ * shared transposition table (Lazy SMP), and the bot returns within the time per move.
+ */
+@UsesAllCores
+public class LazySMPBot implements IBot {
+    private static final String BOT_NAME = "LazySMPBot";
+    private static final long TABLE_BYTES = 128L << 20;
+    private static final int MAX_DEPTH = 82;
+
+    private final TimeManager time = new TimeManager();
+    private LazySMPSearch search;
+
+    private volatile int lastDepth;
+    private volatile double lastNodesPerSecond;
+
+    @Override
+    public IMove doMove(IGameState state) {
+        time.start(state);
+        if (search == null) {
+            // As in AlphaBetaBot, the table comes with the first move and is sized to fit its time
+            long bytes = Math.min(Math.min(TABLE_BYTES, Runtime.getRuntime().maxMemory() / 8),
+                    TimeManager.allocationBudget(state.getTimePerMove()));
+            search = new LazySMPSearch(Runtime.getRuntime().availableProcessors(), new TranspositionTable(bytes));
+            search.seedMoveOrdering(new LocalPrioritisedListBot().getPreferredMoves());
+        }
+        int move = search.search(state, time.getSoftDeadline(), time.getHardDeadline(), MAX_DEPTH);
+
+        lastDepth = search.getCompletedDepth();
+        lastNodesPerSecond = search.getNodes() * 1e9 / time.getElapsedNanos();
+        return Move.of(move);
+    }
+
+    /**
+     * @return the deepest search completed by any thread for the last move
+     */
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    /**
+     * @return positions searched per second by all threads together for the last move
+     */
+    public double getLastNodesPerSecond() {
+        return lastNodesPerSecond;
+    }
+
+    @Override
+    public String getBotName() {
+        return BOT_NAME;
+    }
+}
@@ -39,7 +39,7 @@ public class LocalPrioritisedListBot implements IBot {
                     int y = move[1]*3 + selectedMove[1];
                     if(state.getField().getBoard()[x][y].equals(IField.EMPTY_FIELD))
                     {
-                        return new Move(x,y);
+                        return Move.of(x,y);
                     }
                 }
             }
@@ -49,6 +49,16 @@ public class LocalPrioritisedListBot implements IBot {
         return state.getField().getAvailableMoves().get(0);
     }
 
+    /**
+     * @return a copy of the preferred moves within a 3x3 board, {x, y}, best first
+     */
+    public int[][] getPreferredMoves() {
+        int[][] copy = new int[preferredMoves.length][];
+        for (int i = 0; i < copy.length; i++)
+            copy[i] = preferredMoves[i].clone();
+        return copy;
+    }
+
     @Override
     public String getBotName() {
         return BOTNAME;
@@ -0,0 +1,283 @@
+package dk.easv.bll.bot;
+
+import dk.easv.bll.bot.search.NodeStore;
+import dk.easv.bll.bot.search.TimeManager;
+import dk.easv.bll.game.GameSimulator;
+import dk.easv.bll.game.HeavyPlayoutPolicy;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Monte Carlo Tree Search on all available cores.
+ *
+ * Every core runs MCTS iterations on one shared tree: select a path with UCT,
+ * expand the leaf, finish the game with a playout on its own GameSimulator and add
+ * the result along the path. Playouts use a HeavyPlayoutPolicy, which takes and
+ * blocks microboard wins instead of playing purely at random. Visits are counted on the way down, before
+ * the result is known, so a node being searched by one thread looks like a loss
+ * to the others for a moment (virtual loss) and the threads spread out over the
+ * tree instead of all following the same path.
+ *
+ * The tree lives in a NodeStore that is allocated with the first move and reused
+ * for every move after it, so a search does not create garbage. When the store
+ * is full the tree stops growing and the remaining time goes to playouts from its
+ * leaves.
+ * When the bot plays a whole game, the part of the tree below the opponent's
+ * reply is kept for the next move instead of being searched again.
+ *
+ * The search stops at the soft stop of a TimeManager, which leaves a safety margin
+ * before IGameState.getTimePerMove() and stops earlier in quiet positions, and
+ * plays the most visited move.
+ */
+@UsesAllCores
+public class MCTSBot implements IBot {
+    private static final String BOT_NAME = "MCTSBot";
+    private static final double EXPLORATION = Math.sqrt(2);
+    private static final int MAX_NODES = 1 << 25; // per tree, about 470 MB
+
+    // Shared by all MCTSBots; idle threads end after a minute, so unused bots keep no threads
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, BOT_NAME + " worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int threads = Runtime.getRuntime().availableProcessors();
+    private final TimeManager time = new TimeManager();
+    private final long treeMemory; // 0 to size the trees from the heap and the time per move
+    private NodeStore tree;
+    private NodeStore spare;
+    private final GameSimulator afterChoice = new GameSimulator();
+    private final GameSimulator probe = new GameSimulator();
+    private int lastChosen = -1; // the root child played last move, -1 if the tree can't be reused
+
+    private volatile long lastIterations;
+    private volatile double lastIterationsPerSecond;
+    private volatile double lastFillLevel;
+    private volatile int lastReusedNodes;
+
+    public MCTSBot() {
+        this(0);
+    }
+
+    /**
+     * @param treeMemory bytes for the trees, or 0 to size them from the heap and
+     *                   the time per move, see allocateTrees()
+     */
+    public MCTSBot(long treeMemory) {
+        this.treeMemory = treeMemory;
+    }
+
+    @Override
+    public IMove doMove(IGameState state) {
+        time.start(state);
+        long deadline = time.getSoftDeadline();
+
+        GameSimulator rootPosition = new GameSimulator(state);
+        int[] moves = new int[81];
+        int count = rootPosition.getAvailableMoves(moves);
+        if (count == 1) {
+            lastChosen = -1;
+            return Move.of(moves[0]);
+        }
+
+        allocateTrees(state.getTimePerMove());
+        NodeStore tree = reuseTree(state);
+        tree.expand(NodeStore.ROOT, moves, count);
+        if (!tree.isExpanded(NodeStore.ROOT) || tree.getChildCount(NodeStore.ROOT) == 0) {
+            // No room for the root's children, so there is nothing to search: play a legal move
+            lastChosen = -1;
+            return Move.of(moves[0]);
+        }
+
+        List<Future<Long>> results = new ArrayList<>();
+        for (int i = 1; i < threads; i++)
+            results.add(WORKERS.submit(() -> search(tree, rootPosition, deadline)));
+        long iterations = search(tree, rootPosition, deadline);
+        for (Future<Long> result : results) {
+            try {
+                iterations += result.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                throw new RuntimeException(ex.getCause());
+            }
+        }
+
+        long elapsed = time.getElapsedNanos();
+        lastIterations = iterations;
+        lastIterationsPerSecond = iterations * 1e9 / elapsed;
+        lastFillLevel = tree.getFillLevel();
+        int chosen = tree.getMostVisitedChild(NodeStore.ROOT);
+        rememberChoice(rootPosition, chosen);
+        return Move.of(tree.getMove(chosen));
+    }
+
+    /**
+     * Finds the subtree of the last search that starts at the given position, so
+     * its statistics are kept. The position must follow the move chosen last time
+     * by one opponent move, which is recognised by its Zobrist hash. The subtree is
+     * copied into the spare store, which then becomes the tree, and the rest of the
+     * old tree is dropped at once. Without a match the search starts from scratch.
+     * @param state the position to search
+     * @return the tree to search, with the position at its root
+     */
+    private NodeStore reuseTree(IGameState state) {
+        int reused = 0;
+        if (lastChosen >= 0 && state.getMoveNumber() == afterChoice.getMoveNumber() + 1
+                && tree.isExpanded(lastChosen)) {
+            int first = tree.getFirstChild(lastChosen);
+            for (int reply = first; reply < first + tree.getChildCount(lastChosen); reply++) {
+                probe.load(afterChoice);
+                probe.play(tree.getMove(reply));
+                if (probe.getHash() == state.getHash()) {
+                    reused = spare.loadSubtree(tree, reply);
+                    NodeStore swap = tree;
+                    tree = spare;
+                    spare = swap;
+                    break;
+                }
+            }
+        }
+        if (reused == 0)
+            tree.clear();
+        lastReusedNodes = reused;
+        lastChosen = -1;
+        return tree;
+    }
+
+    // Keeps the position after the chosen move, to recognise the next position
+    private void rememberChoice(GameSimulator rootPosition, int chosen) {
+        afterChoice.load(rootPosition);
+        afterChoice.play(tree.getMove(chosen));
+        lastChosen = chosen;
+    }
+
+    // Runs iterations on one thread until the deadline, returns how many it ran
+    private long search(NodeStore tree, GameSimulator rootPosition, long deadline) {
+        GameSimulator simulator = new GameSimulator();
+        simulator.load(rootPosition);
+        SplittableRandom random = new SplittableRandom();
+        HeavyPlayoutPolicy policy = new HeavyPlayoutPolicy();
+        int[] moves = new int[81];
+        int[] path = new int[82];
+        int rootPlayer = rootPosition.getCurrentPlayer();
+        long iterations = 0;
+        while (System.nanoTime() < deadline) {
+            simulator.reset();
+            int node = NodeStore.ROOT;
+            int depth = 0;
+            path[depth++] = node;
+            tree.addVisit(node);
+
+            // Selection, counting the visit (and so the virtual loss) on the way down
+            while (tree.isExpanded(node) && tree.getChildCount(node) > 0) {
+                node = select(tree, node);
+                tree.addVisit(node);
+                simulator.play(tree.getMove(node));
+                path[depth++] = node;
+            }
+
+            // Expansion of a leaf that has been visited before
+            if (!tree.isExpanded(node) && tree.getVisits(node) > 1) {
+                int count = simulator.isDeadDraw() ? 0 : simulator.getAvailableMoves(moves);
+                if (tree.expand(node, moves, count) && count > 0) {
+                    node = tree.getFirstChild(node) + random.nextInt(count);
+                    tree.addVisit(node);
+                    simulator.play(tree.getMove(node));
+                    path[depth++] = node;
+                }
+            }
+
+            // Simulation and backpropagation. A node's score is counted for the
+            // player who made its move, in half points: 2 for a win, 1 for a tie.
+            int winner = simulator.playout(random, policy);
+            for (int i = 1; i < depth; i++) {
+                int player = (rootPlayer + i - 1) % 2; // the player who made the move of path[i]
+                tree.addScore(path[i], winner < 0 ? 1 : winner == player ? 2 : 0);
+            }
+            iterations++;
+        }
+        return iterations;
+    }
+
+    // UCT, trying unvisited children first
+    private static int select(NodeStore tree, int node) {
+        double logVisits = Math.log(Math.max(1, tree.getVisits(node)));
+        int first = tree.getFirstChild(node);
+        int end = first + tree.getChildCount(node);
+        int best = first;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < end; child++) {
+            int visits = tree.getVisits(child);
+            if (visits == 0)
+                return child;
+            double value = tree.getScore(child) / (2.0 * visits)
+                    + EXPLORATION * Math.sqrt(logVisits / visits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    // The trees are allocated with the first move, so a bot that is created but
+    // never plays, like the bots listed in the GUI, holds no memory. Each tree gets
+    // half of the memory, as the spare holds the subtree kept for the next move.
+    // Without a given size they get what can be allocated in about a quarter of the
+    // first move, at most an eighth of the heap like the alpha-beta tables, and at
+    // most MAX_NODES nodes each: at 1000 ms per move up to 512 MB, tens of millions
+    // of nodes when the heap allows it, and at 100 ms 50 MB.
+    private void allocateTrees(int timePerMove) {
+        if (tree == null) {
+            long bytes = treeMemory > 0 ? treeMemory
+                    : Math.min(Math.min(Runtime.getRuntime().maxMemory() / 8, TimeManager.allocationBudget(timePerMove)),
+                            2L * MAX_NODES * NodeStore.BYTES_PER_NODE);
+            tree = NodeStore.withMemory(bytes / 2);
+            spare = NodeStore.withMemory(bytes / 2);
+        }
+    }
+
+    /**
+     * @return the number of MCTS iterations run for the last move
+     */
+    public long getLastIterations() {
+        return lastIterations;
+    }
+
+    /**
+     * @return MCTS iterations per second, summed over all threads, for the last move
+     */
+    public double getLastIterationsPerSecond() {
+        return lastIterationsPerSecond;
+    }
+
+    /**
+     * @return the share of the tree's node capacity used by the last move, 0.0-1.0
+     */
+    public double getLastFillLevel() {
+        return lastFillLevel;
+    }
+
+    /**
+     * @return the number of nodes kept from the previous move's tree for the last move
+     */
+    public int getLastReusedNodes() {
+        return lastReusedNodes;
+    }
+
+    @Override
+    public String getBotName() {
+        return BOT_NAME;
+    }
+}
@@ -0,0 +1,18 @@
+package dk.easv.bll.bot;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a bot that does its thinking somewhere else, like a server or another
+ * process, so its doMove() mostly waits for I/O instead of using the CPU.
+ *
+ * Simulations play games with such a bot on threads of their own instead of on the
+ * worker pool, so many of them can wait for their moves at the same time.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface RemoteBot {
+}
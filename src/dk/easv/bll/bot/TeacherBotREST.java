@@ -19,11 +19,17 @@ import java.net.http.HttpResponse.BodyHandlers;
  *
  * This client implementation requires the Google GSon library.
  *
+ * The bot only waits for the server, so it is marked as a RemoteBot, and simulations
+ * can play many games against it at once. The HTTP client is shared by all instances,
+ * so those games reuse its connections and selector thread.
+ *
  */
+@RemoteBot
 public class TeacherBotREST implements IBot{
     private static final String BOT_NAME = "Teacher Bot (online)";
     // This bot requires a VPN connection to the EASV network
     private static final String SERVER_URI = "http://10.176.88.51:4567/doMove";
+    private static final HttpClient CLIENT = HttpClient.newHttpClient();
     @Override
     public IMove doMove(IGameState state) {
         Gson gson = new Gson();
@@ -36,10 +42,9 @@ public class TeacherBotREST implements IBot{
                 .PUT(HttpRequest.BodyPublishers.ofString(jsonState))
                 .build();
 
-        var client = HttpClient.newHttpClient();
         HttpResponse<String> response = null;
         try {
-            response = client.send(request, BodyHandlers.ofString());
+            response = CLIENT.send(request, BodyHandlers.ofString());
 
         // This is not the most graceful exception handling, but we want the bot to die
         // if the connection fails. Normally we could retry, however that would violate
@@ -0,0 +1,18 @@
+package dk.easv.bll.bot;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a bot that searches on every core itself during its doMove(), like MCTSBot
+ * and LazySMPBot.
+ *
+ * Simulations with such a bot play one game at a time, because games played side
+ * by side would compete for the same cores and make the bots overrun their time.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface UsesAllCores {
+}
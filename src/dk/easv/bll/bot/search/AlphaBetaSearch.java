@@ -0,0 +1,294 @@
+package dk.easv.bll.bot.search;
+
+import dk.easv.bll.field.IField;
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.Move;
+
+/**
+ * Iterative deepening negamax search with alpha-beta pruning.
+ *
+ * Moves are played and taken back with GameManager.makeMove()/undoMove(), so the
+ * search follows the real game rules. Results are kept in a TranspositionTable
+ * keyed by the position hash, which also supplies the move to try first, and the
+ * other moves are sorted by a MoveOrdering. Each iteration after the first
+ * searches a narrow window around the previous score (an aspiration window) and
+ * widens it only when the score falls outside.
+ *
+ * One search runs on one thread. Several searches on different threads may
+ * share one table, see LazySMPSearch.
+ */
+public final class AlphaBetaSearch {
+
+    private static final int INFINITY = Evaluation.WIN + 1;
+    private static final int MAX_PLY = 82;
+    private static final int ASPIRATION = 50;
+    private static final int CHECK_INTERVAL = 1023; // poll the clock every 1024 nodes
+
+    private final TranspositionTable table;
+    private final int[][] moves = new int[MAX_PLY][81];
+    private final MoveOrdering ordering = new MoveOrdering();
+
+    private GameManager game;
+    private IGameState state;
+    private IField field;
+
+    private long deadline;
+    private volatile boolean stopped;
+    private long nodes;
+    private int rootBest;
+
+    private int bestMove = -1;
+    private int bestScore;
+    private int completedDepth;
+
+    /**
+     * @param table the table to keep results in
+     */
+    public AlphaBetaSearch(TranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Sets the position to search, with player moveNumber % 2 to move. The state
+     * is copied, not changed. Also clears an earlier stop().
+     * @param position the position to search
+     */
+    public void setPosition(IGameState position) {
+        stopped = false;
+        state = new GameState(position);
+        field = state.getField();
+        game = new GameManager(state);
+        game.setCurrentPlayer(position.getMoveNumber() % 2);
+    }
+
+    /**
+     * Searches one depth deeper at a time until the deadline, stop() or a forced result.
+     * @param deadline System.nanoTime() at which to stop
+     * @param startDepth the first depth to search, at least 1
+     * @return packed cell index of the best move of the deepest completed iteration
+     */
+    public int iterate(long deadline, int startDepth) {
+        return iterate(deadline, startDepth, MAX_PLY);
+    }
+
+    /**
+     * Searches one depth deeper at a time until maxDepth is completed, the deadline,
+     * stop() or a forced result.
+     * @param deadline System.nanoTime() at which to stop
+     * @param startDepth the first depth to search, at least 1
+     * @param maxDepth the last depth to search
+     * @return packed cell index of the best move of the deepest completed iteration
+     */
+    public int iterate(long deadline, int startDepth, int maxDepth) {
+        return iterate(deadline, deadline, startDepth, maxDepth);
+    }
+
+    /**
+     * Searches one depth deeper at a time until maxDepth is completed, stop() or a
+     * forced result. No new iteration is started after the soft deadline, and a
+     * running one is given up at the hard deadline.
+     * @param softDeadline System.nanoTime() after which no new iteration is started
+     * @param hardDeadline System.nanoTime() at which to stop
+     * @param startDepth the first depth to search, at least 1
+     * @param maxDepth the last depth to search
+     * @return packed cell index of the best move of the deepest completed iteration
+     */
+    public int iterate(long softDeadline, long hardDeadline, int startDepth, int maxDepth) {
+        this.deadline = hardDeadline;
+        nodes = 0;
+        completedDepth = 0;
+        ordering.newSearch();
+        field.getAvailableMoves(moves[0]);
+        bestMove = moves[0][0];
+        rootBest = bestMove;
+        bestScore = 0;
+
+        maxDepth = Math.min(maxDepth, 81 - state.getMoveNumber());
+        for (int depth = Math.max(1, startDepth); depth <= maxDepth; depth++) {
+            if (completedDepth > 0 && System.nanoTime() >= softDeadline)
+                break;
+            int alpha = -INFINITY;
+            int beta = INFINITY;
+            if (completedDepth > 0 && !Evaluation.isDecisive(bestScore)) {
+                alpha = bestScore - ASPIRATION;
+                beta = bestScore + ASPIRATION;
+            }
+            int score;
+            while (true) {
+                score = searchRoot(depth, alpha, beta);
+                if (stopped)
+                    break;
+                if (score <= alpha)
+                    alpha = -INFINITY;
+                else if (score >= beta)
+                    beta = INFINITY;
+                else
+                    break;
+            }
+            if (stopped)
+                break;
+            bestScore = score;
+            bestMove = rootBest;
+            completedDepth = depth;
+            if (Evaluation.isDecisive(score))
+                break;
+        }
+        return bestMove;
+    }
+
+    /**
+     * Makes a running iterate() return as soon as possible, or the next one, if it
+     * has not started yet, return at once. May be called from any thread. The stop
+     * lasts until the next setPosition().
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    private int searchRoot(int depth, int alpha, int beta) {
+        int[] list = moves[0];
+        int count = field.getAvailableMoves(list);
+        ordering.order(list, count, 0, game.getCurrentPlayer(), rootBest, field.getOpenMicroboards());
+
+        int best = -INFINITY;
+        int bestIndex = list[0];
+        int originalAlpha = alpha;
+        for (int i = 0; i < count; i++) {
+            game.makeMove(Move.of(list[i]));
+            int score = -negamax(depth - 1, 1, -beta, -alpha);
+            game.undoMove();
+            if (stopped)
+                return best;
+            if (score > best) {
+                best = score;
+                bestIndex = list[i];
+                if (score > alpha)
+                    alpha = score;
+                if (alpha >= beta)
+                    break;
+            }
+        }
+        rootBest = bestIndex;
+        store(depth, 0, originalAlpha, beta, best, bestIndex);
+        return best;
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        if ((++nodes & CHECK_INTERVAL) == 0 && System.nanoTime() >= deadline)
+            stopped = true;
+        if (stopped)
+            return 0;
+
+        GameManager.GameOverState over = game.getGameOver();
+        if (over == GameManager.GameOverState.Win)
+            return -(Evaluation.WIN - ply); // the player who just moved has won
+        if (over == GameManager.GameOverState.Tie || game.isDeadDraw())
+            return 0;
+        if (depth == 0)
+            return Evaluation.evaluate(field, game.getCurrentPlayer());
+
+        long hash = state.getHash();
+        long entry = table.probe(hash);
+        int tableMove = -1;
+        if (entry != 0L) {
+            tableMove = TranspositionTable.move(entry);
+            if (TranspositionTable.depth(entry) >= depth) {
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                int type = TranspositionTable.type(entry);
+                if (type == TranspositionTable.EXACT)
+                    return score;
+                if (type == TranspositionTable.LOWER_BOUND && score > alpha)
+                    alpha = score;
+                else if (type == TranspositionTable.UPPER_BOUND && score < beta)
+                    beta = score;
+                if (alpha >= beta)
+                    return score;
+            }
+        }
+
+        int[] list = moves[ply];
+        int count = field.getAvailableMoves(list);
+        int player = game.getCurrentPlayer();
+        ordering.order(list, count, ply, player, tableMove, field.getOpenMicroboards());
+
+        int best = -INFINITY;
+        int bestIndex = -1;
+        int originalAlpha = alpha;
+        for (int i = 0; i < count; i++) {
+            game.makeMove(Move.of(list[i]));
+            int score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            game.undoMove();
+            if (stopped)
+                return 0;
+            if (score > best) {
+                best = score;
+                bestIndex = list[i];
+                if (score > alpha)
+                    alpha = score;
+                if (alpha >= beta) {
+                    ordering.cutoff(list[i], ply, player, depth);
+                    break;
+                }
+            }
+        }
+        store(depth, ply, originalAlpha, beta, best, bestIndex);
+        return best;
+    }
+
+    private void store(int depth, int ply, int alpha, int beta, int score, int move) {
+        int type = score <= alpha ? TranspositionTable.UPPER_BOUND
+                : score >= beta ? TranspositionTable.LOWER_BOUND
+                : TranspositionTable.EXACT;
+        table.store(state.getHash(), depth, type, toTable(score, ply), move);
+    }
+
+    // Wins and losses are stored as distance from the stored position, not from the root
+    private static int toTable(int score, int ply) {
+        if (Evaluation.isDecisive(score))
+            return score > 0 ? score + ply : score - ply;
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (Evaluation.isDecisive(score))
+            return score > 0 ? score - ply : score + ply;
+        return score;
+    }
+
+    /**
+     * @return the move ordering of this search, for example to seed() it
+     */
+    public MoveOrdering getMoveOrdering() {
+        return ordering;
+    }
+
+    /**
+     * @return packed cell index of the best move of the deepest completed iteration
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * @return score of the best move, for the player to move
+     */
+    public int getBestScore() {
+        return bestScore;
+    }
+
+    /**
+     * @return the deepest iteration that was completed
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * @return the number of positions searched by the last iterate()
+     */
+    public long getNodes() {
+        return nodes;
+    }
+}
@@ -0,0 +1,68 @@
+package dk.easv.bll.bot.search;
+
+import dk.easv.bll.field.BoardPatterns;
+import dk.easv.bll.field.IField;
+
+/**
+ * A static evaluation of Ultimate Tic-Tac-Toe positions for search bots.
+ *
+ * Won microboards count by where they sit on the macroboard (centre, then
+ * corners, then edges). Two won microboards in a macroboard line that can still
+ * be completed count extra, and so do two cells in a row on an undecided
+ * microboard, weighted by the microboard's square. Everything is counted for
+ * both players and the difference is returned.
+ */
+public final class Evaluation {
+
+    /**
+     * Larger than any evaluation, used for won and lost positions.
+     */
+    public static final int WIN = 1_000_000;
+
+    private static final int[] SQUARE = {3, 2, 3, 2, 4, 2, 3, 2, 3};
+    private static final int MICRO_WON = 30;
+    private static final int MICRO_TWO = 4;
+    private static final int MACRO_TWO = 150;
+
+    private Evaluation() {
+    }
+
+    /**
+     * @param field the position, which must not be decided yet
+     * @param player the player to evaluate for, 0 or 1
+     * @return the value of the position for player, positive when player is ahead
+     */
+    public static int evaluate(IField field, int player) {
+        byte me = (byte) player;
+        byte opponent = (byte) (1 - player);
+        int mine = BoardPatterns.macroPattern(field, me);
+        int theirs = BoardPatterns.macroPattern(field, opponent);
+        int tied = BoardPatterns.macroPattern(field, IField.CELL_TIE);
+
+        int score = 0;
+        for (int micro = 0; micro < 9; micro++) {
+            int bit = 1 << micro;
+            if ((mine & bit) != 0) {
+                score += MICRO_WON * SQUARE[micro];
+            } else if ((theirs & bit) != 0) {
+                score -= MICRO_WON * SQUARE[micro];
+            } else if ((tied & bit) == 0) {
+                int own = BoardPatterns.playerPattern(field, micro, me);
+                int other = BoardPatterns.playerPattern(field, micro, opponent);
+                score += (BoardPatterns.countTwos(own, other) - BoardPatterns.countTwos(other, own))
+                        * MICRO_TWO * SQUARE[micro];
+            }
+        }
+        score += (BoardPatterns.countTwos(mine, theirs | tied) - BoardPatterns.countTwos(theirs, mine | tied))
+                * MACRO_TWO;
+        return score;
+    }
+
+    /**
+     * @param score a search score
+     * @return true if the score is a forced win or loss rather than an evaluation
+     */
+    public static boolean isDecisive(int score) {
+        return Math.abs(score) > WIN - 100;
+    }
+}
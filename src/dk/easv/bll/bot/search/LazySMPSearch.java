@@ -0,0 +1,209 @@
+package dk.easv.bll.bot.search;
+
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.Move;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parallel alpha-beta search in the style of Lazy SMP.
+ *
+ * Every thread runs its own AlphaBetaSearch of the same position, and they all
+ * share one lock-free TranspositionTable. Helper threads start their iterative
+ * deepening one or two plies deeper than the main thread, so they run ahead and
+ * fill the table with results the others then reuse. The move played is the best
+ * move of the thread that completed the deepest iteration.
+ *
+ * The calling thread is the main search thread. Helpers run on daemon threads
+ * shared by all searches, which are reused while they are busy and end after a
+ * minute without work, so a bot that is no longer used keeps no threads.
+ */
+public final class LazySMPSearch {
+
+    private final int threads;
+    private final TranspositionTable table;
+    private final AlphaBetaSearch[] searches;
+
+    private static final ExecutorService HELPERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "LazySMP helper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private int completedDepth;
+    private long nodes;
+
+    /**
+     * @param threads number of threads to search with, including the caller
+     * @param table the table shared by all threads
+     */
+    public LazySMPSearch(int threads, TranspositionTable table) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Need at least one thread, was " + threads);
+        this.threads = threads;
+        this.table = table;
+        searches = new AlphaBetaSearch[threads];
+        for (int i = 0; i < threads; i++)
+            searches[i] = new AlphaBetaSearch(table);
+    }
+
+    /**
+     * Seeds the move ordering of every thread, see MoveOrdering.seed().
+     * @param preferredMoves {x, y} positions of a 3x3 board, best first
+     */
+    public void seedMoveOrdering(int[][] preferredMoves) {
+        for (AlphaBetaSearch search : searches)
+            search.getMoveOrdering().seed(preferredMoves);
+    }
+
+    /**
+     * Searches a position on all threads until the deadline or maxDepth.
+     * @param state the position, with player moveNumber % 2 to move
+     * @param deadline System.nanoTime() at which to stop
+     * @param maxDepth the deepest iteration to search
+     * @return packed cell index of the best move
+     */
+    public int search(IGameState state, long deadline, int maxDepth) {
+        return search(state, deadline, deadline, maxDepth);
+    }
+
+    /**
+     * Searches a position on all threads until maxDepth or the deadlines. The main
+     * thread starts no new iteration after the soft deadline, and all threads stop
+     * at the hard deadline.
+     * @param state the position, with player moveNumber % 2 to move
+     * @param softDeadline System.nanoTime() after which the main thread starts no new iteration
+     * @param hardDeadline System.nanoTime() at which to stop
+     * @param maxDepth the deepest iteration to search
+     * @return packed cell index of the best move
+     */
+    public int search(IGameState state, long softDeadline, long hardDeadline, int maxDepth) {
+        for (AlphaBetaSearch search : searches)
+            search.setPosition(state);
+
+        List<Future<?>> helpers = new ArrayList<>();
+        for (int i = 1; i < threads; i++) {
+            AlphaBetaSearch helper = searches[i];
+            int startDepth = 1 + (i % 2 == 1 ? 1 : 2); // stagger: half the helpers one ply ahead, half two
+            helpers.add(HELPERS.submit(() -> helper.iterate(hardDeadline, startDepth, maxDepth)));
+        }
+        searches[0].iterate(softDeadline, hardDeadline, 1, maxDepth);
+
+        // The main thread is done, so the helpers need not finish their iterations
+        for (int i = 1; i < threads; i++)
+            searches[i].stop();
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                throw new RuntimeException(ex.getCause());
+            }
+        }
+
+        AlphaBetaSearch deepest = searches[0];
+        nodes = 0;
+        for (AlphaBetaSearch search : searches) {
+            nodes += search.getNodes();
+            if (search.getCompletedDepth() > deepest.getCompletedDepth())
+                deepest = search;
+        }
+        completedDepth = deepest.getCompletedDepth();
+        return deepest.getBestMove();
+    }
+
+    /**
+     * @return the deepest iteration completed by any thread in the last search
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * @return positions searched by all threads together in the last search
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the table shared by the threads
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Creates the same set of positions every time, by playing random moves with a fixed seed.
+     * @param count number of positions
+     * @param seed random seed
+     * @return positions between move 10 and 30, none of them decided
+     */
+    public static List<IGameState> benchmarkPositions(int count, long seed) {
+        Random random = new Random(seed);
+        int[] moves = new int[81];
+        List<IGameState> positions = new ArrayList<>();
+        while (positions.size() < count) {
+            GameState state = new GameState();
+            GameManager game = new GameManager(state);
+            int plies = 10 + random.nextInt(21);
+            for (int ply = 0; ply < plies && game.getGameOver() == GameManager.GameOverState.Active; ply++) {
+                int available = state.getField().getAvailableMoves(moves);
+                game.makeMove(Move.of(moves[random.nextInt(available)]));
+            }
+            if (game.getGameOver() == GameManager.GameOverState.Active && !game.isDeadDraw())
+                positions.add(state);
+        }
+        return positions;
+    }
+
+    /**
+     * Measures the time to search a set of positions to a fixed depth, starting
+     * each position with an empty table.
+     * @param positions the positions to search
+     * @param depth the depth to search to
+     * @param threads number of threads
+     * @return total time taken, in nanoseconds
+     */
+    public static long timeToDepth(List<IGameState> positions, int depth, int threads) {
+        LazySMPSearch search = new LazySMPSearch(threads, new TranspositionTable(32L << 20));
+        long total = 0;
+        for (IGameState position : positions) {
+            search.getTable().clear();
+            long start = System.nanoTime();
+            search.search(position, Long.MAX_VALUE, depth);
+            total += System.nanoTime() - start;
+        }
+        return total;
+    }
+
+    /**
+     * Prints the speedup of searching a fixed set of positions on 1 to n threads.
+     * @param args optional: depth (default 7), number of positions (default 20),
+     * most threads (default all cores)
+     */
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        List<IGameState> positions = benchmarkPositions(count, 42L);
+
+        timeToDepth(positions, depth, 1); // warm up
+        long single = timeToDepth(positions, depth, 1);
+        System.out.printf("threads  time(ms)  speedup  per core%n");
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            long time = threads == 1 ? single : timeToDepth(positions, depth, threads);
+            double speedup = (double) single / time;
+            System.out.printf("%7d  %8d  %7.2f  %8.2f%n", threads, time / 1_000_000, speedup, speedup / threads);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package dk.easv.bll.bot.search;
+
+import java.util.Arrays;
+
+/**
+ * Sorts move lists for alpha-beta search, most promising move first.
+ *
+ * Moves are packed cell indexes. The order is:
+ * <ol>
+ *     <li>the move from the transposition table,</li>
+ *     <li>the killer moves of the ply, the last two moves that caused a cutoff
+ *     at the same distance from the root,</li>
+ *     <li>all other moves by history score: how often and how deep the move caused
+ *     a cutoff for the player so far, plus an optional fixed prior per cell,</li>
+ *     <li>last, moves that send the opponent to a won or tied microboard, which
+ *     lets the opponent play anywhere.</li>
+ * </ol>
+ *
+ * An ordering belongs to one search thread, it is not thread safe.
+ */
+public final class MoveOrdering {
+
+    private static final int MAX_PLY = 82;
+    private static final int TABLE_MOVE = Integer.MAX_VALUE;
+    private static final int KILLER_FIRST = 1 << 28;
+    private static final int KILLER_SECOND = KILLER_FIRST - 1;
+    private static final int FREE_CHOICE_PENALTY = 1 << 26;
+    private static final int HISTORY_LIMIT = 1 << 24; // history is halved above this
+    private static final int PRIOR_WEIGHT = 16;
+
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[][] history = new int[2][81];
+    private final int[] prior = new int[81];
+    private final int[] scores = new int[81];
+
+    public MoveOrdering() {
+        clear();
+    }
+
+    /**
+     * Uses a local priority list, like LocalPrioritisedListBot.getPreferredMoves(),
+     * as a fixed prior: a cell ranks by its position within its microboard first and
+     * by the microboard's position on the macroboard second. The prior only breaks
+     * ties until the history has been learned.
+     * @param preferredMoves {x, y} positions of a 3x3 board, best first
+     */
+    public void seed(int[][] preferredMoves) {
+        int[] rank = new int[9];
+        Arrays.fill(rank, preferredMoves.length);
+        for (int i = 0; i < preferredMoves.length; i++)
+            rank[preferredMoves[i][0] * 3 + preferredMoves[i][1]] = i;
+        for (int index = 0; index < 81; index++) {
+            int local = 9 - rank[index % 9];
+            int micro = 9 - rank[index / 9];
+            prior[index] = (local * 10 + micro) * PRIOR_WEIGHT;
+        }
+    }
+
+    /**
+     * Forgets killers and history, but keeps the prior.
+     */
+    public void clear() {
+        for (int[] killer : killers) {
+            killer[0] = -1;
+            killer[1] = -1;
+        }
+        Arrays.fill(history[0], 0);
+        Arrays.fill(history[1], 0);
+    }
+
+    /**
+     * Prepares for a new search: killers are reset, as the plies now count from a
+     * new root, and the history is halved so older results count less.
+     */
+    public void newSearch() {
+        for (int[] killer : killers) {
+            killer[0] = -1;
+            killer[1] = -1;
+        }
+        for (int[] table : history)
+            for (int i = 0; i < table.length; i++)
+                table[i] >>= 1;
+    }
+
+    /**
+     * Sorts a move list in place.
+     * @param moves packed cell indexes
+     * @param count number of moves in the list
+     * @param ply distance from the root
+     * @param player the player to move
+     * @param tableMove move from the transposition table, or -1
+     * @param openMicroboards 9 bit mask of the undecided microboards
+     */
+    public void order(int[] moves, int count, int ply, int player, int tableMove, int openMicroboards) {
+        int[] killer = killers[ply];
+        int[] playerHistory = history[player];
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int score;
+            if (move == tableMove)
+                score = TABLE_MOVE;
+            else if (move == killer[0])
+                score = KILLER_FIRST;
+            else if (move == killer[1])
+                score = KILLER_SECOND;
+            else {
+                score = playerHistory[move] + prior[move];
+                if ((openMicroboards & (1 << (move % 9))) == 0)
+                    score -= FREE_CHOICE_PENALTY;
+            }
+            scores[i] = score;
+        }
+        // Insertion sort, the lists are short
+        for (int i = 1; i < count; i++) {
+            int move = moves[i];
+            int score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                moves[j + 1] = moves[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            moves[j + 1] = move;
+            scores[j + 1] = score;
+        }
+    }
+
+    /**
+     * Records a move that caused a beta cutoff.
+     * @param move packed cell index
+     * @param ply distance from the root
+     * @param player the player who played it
+     * @param depth remaining depth of the search at the cutoff
+     */
+    public void cutoff(int move, int ply, int player, int depth) {
+        int[] killer = killers[ply];
+        if (killer[0] != move) {
+            killer[1] = killer[0];
+            killer[0] = move;
+        }
+        int[] playerHistory = history[player];
+        playerHistory[move] += depth * depth;
+        if (playerHistory[move] > HISTORY_LIMIT) {
+            for (int i = 0; i < playerHistory.length; i++)
+                playerHistory[i] >>= 1;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package dk.easv.bll.bot.search;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A search tree kept in preallocated primitive arrays, for MCTS bots.
+ *
+ * A node is an int index into the arrays. Node 0 is the root. The children of a
+ * node are stored next to each other, so a node only records its first child and
+ * how many it has. All arrays are allocated once, with a hard capacity, and
+ * clear() empties the store for the next search without allocating, so a search
+ * creates no garbage however many nodes it adds.
+ *
+ * Every method may be called from many threads at once. Counters are updated with
+ * atomic VarHandle operations, and a node is expanded by the one thread that wins a
+ * compare-and-set on it, which fills in the children and then publishes them. No
+ * locks are taken.
+ *
+ * This class is kept out of dk.easv.bll.bot itself because every class there is
+ * loaded as a bot.
+ */
+public final class NodeStore {
+
+    public static final int ROOT = 0;
+    /**
+     * Memory used per node: move and child count bytes, first child, visits and score ints.
+     */
+    public static final int BYTES_PER_NODE = 1 + 1 + 4 + 4 + 4;
+
+    // firstChild values below 1: node 0 is the root, so it is never anyone's child
+    private static final int UNEXPANDED = 0;
+    private static final int EXPANDING = -1;
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle SIZE;
+
+    static {
+        try {
+            SIZE = MethodHandles.lookup().findVarHandle(NodeStore.class, "size", int.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final int capacity;
+    private final byte[] move;
+    private final byte[] childCount;
+    private final int[] firstChild;
+    private final int[] visits;
+    private final int[] score;
+    private volatile int size;
+
+    /**
+     * @param capacity the most nodes the store can hold, at least 1
+     */
+    public NodeStore(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be at least 1, was " + capacity);
+        this.capacity = capacity;
+        move = new byte[capacity];
+        childCount = new byte[capacity];
+        firstChild = new int[capacity];
+        visits = new int[capacity];
+        score = new int[capacity];
+        clear();
+    }
+
+    /**
+     * @param bytes memory budget for the arrays
+     * @return a store with as many nodes as fit in the budget
+     */
+    public static NodeStore withMemory(long bytes) {
+        return new NodeStore((int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, bytes / BYTES_PER_NODE)));
+    }
+
+    /**
+     * Removes all nodes but a fresh root. Must not run while other threads use the store.
+     */
+    public void clear() {
+        resetNode(ROOT, -1);
+        size = 1;
+    }
+
+    private void resetNode(int node, int moveIndex) {
+        move[node] = (byte) moveIndex;
+        childCount[node] = 0;
+        firstChild[node] = UNEXPANDED;
+        visits[node] = 0;
+        score[node] = 0;
+    }
+
+    /**
+     * Replaces the contents of this store with a subtree of another store, with the
+     * given node as the new root. Everything outside the subtree is dropped at
+     * once, and the copy is compact again. Nodes that do not fit are left
+     * unexpanded. Must not run while other threads use either store.
+     * @param source the store holding the subtree, not this store
+     * @param node root of the subtree in source
+     * @return the number of nodes copied
+     */
+    public int loadSubtree(NodeStore source, int node) {
+        if (source == this)
+            throw new IllegalArgumentException("Can not copy a subtree into its own store");
+        move[ROOT] = -1;
+        visits[ROOT] = source.visits[node];
+        score[ROOT] = source.score[node];
+        childCount[ROOT] = 0;
+        // While copying, firstChild of a copied node holds -2 - (its index in source),
+        // so the copy is walked breadth first in its own order without a queue.
+        firstChild[ROOT] = -2 - node;
+        int end = 1;
+        for (int copy = ROOT; copy < end; copy++) {
+            int original = -2 - firstChild[copy];
+            boolean expanded = source.isExpanded(original);
+            int count = expanded ? source.childCount[original] : 0;
+            if (expanded && count == 0) {
+                firstChild[copy] = end; // a decided position, expanded without children
+                continue;
+            }
+            if (!expanded || capacity - end < count) {
+                firstChild[copy] = UNEXPANDED;
+                childCount[copy] = 0;
+                continue;
+            }
+            int sourceFirst = source.firstChild[original];
+            for (int i = 0; i < count; i++) {
+                int child = end + i;
+                move[child] = source.move[sourceFirst + i];
+                visits[child] = source.visits[sourceFirst + i];
+                score[child] = source.score[sourceFirst + i];
+                childCount[child] = 0;
+                firstChild[child] = -2 - (sourceFirst + i);
+            }
+            firstChild[copy] = end;
+            childCount[copy] = (byte) count;
+            end += count;
+        }
+        size = end;
+        return end;
+    }
+
+    /**
+     * Gives a leaf its children, one per move. If several threads try to expand the
+     * same node only one succeeds, and the others see either no children yet or all
+     * of them.
+     * @param node the leaf to expand
+     * @param moves packed cell indexes of the moves from the leaf
+     * @param count number of moves, 0 for a position where the game is decided
+     * @return true if this call expanded the node, false if another thread has
+     * expanded or is expanding it, or if the store is full
+     */
+    public boolean expand(int node, int[] moves, int count) {
+        if ((int) INTS.getVolatile(firstChild, node) != UNEXPANDED
+                || !INTS.compareAndSet(firstChild, node, UNEXPANDED, EXPANDING))
+            return false;
+        int first = allocate(count);
+        if (first < 0) {
+            INTS.setRelease(firstChild, node, UNEXPANDED);
+            return false;
+        }
+        for (int i = 0; i < count; i++)
+            resetNode(first + i, moves[i]);
+        childCount[node] = (byte) count;
+        INTS.setRelease(firstChild, node, first);
+        return true;
+    }
+
+    // Reserves count consecutive nodes, or returns -1 if they don't fit
+    private int allocate(int count) {
+        int current;
+        do {
+            current = size;
+            if (capacity - current < count)
+                return -1;
+        } while (!SIZE.compareAndSet(this, current, current + count));
+        return current;
+    }
+
+    /**
+     * @param node a node
+     * @return true once the node's children are published, which may be none
+     */
+    public boolean isExpanded(int node) {
+        return (int) INTS.getAcquire(firstChild, node) > 0;
+    }
+
+    /**
+     * Only valid once isExpanded(node) has returned true.
+     * @param node an expanded node
+     * @return the index of the node's first child, the others follow it
+     */
+    public int getFirstChild(int node) {
+        return (int) INTS.getAcquire(firstChild, node);
+    }
+
+    /**
+     * Only valid once isExpanded(node) has returned true.
+     * @param node an expanded node
+     * @return the number of children of the node
+     */
+    public int getChildCount(int node) {
+        return childCount[node];
+    }
+
+    /**
+     * @param node a node other than the root
+     * @return packed cell index of the move leading to the node
+     */
+    public int getMove(int node) {
+        return move[node];
+    }
+
+    public int getVisits(int node) {
+        return (int) INTS.getOpaque(visits, node);
+    }
+
+    /**
+     * @param node a node
+     * @return the results of the node's visits, in half points
+     */
+    public int getScore(int node) {
+        return (int) INTS.getOpaque(score, node);
+    }
+
+    /**
+     * Counts a visit before its result is known, which makes it a virtual loss
+     * until addScore() is called.
+     * @param node the visited node
+     */
+    public void addVisit(int node) {
+        INTS.getAndAdd(visits, node, 1);
+    }
+
+    /**
+     * @param node the visited node
+     * @param halfPoints the result of the visit, 2 for a win, 1 for a tie, 0 for a loss
+     */
+    public void addScore(int node, int halfPoints) {
+        if (halfPoints != 0)
+            INTS.getAndAdd(score, node, halfPoints);
+    }
+
+    /**
+     * @param node an expanded node with at least one child
+     * @return the child with the most visits
+     */
+    public int getMostVisitedChild(int node) {
+        int first = getFirstChild(node);
+        int best = first;
+        for (int child = first + 1; child < first + childCount[node]; child++) {
+            if (getVisits(child) > getVisits(best))
+                best = child;
+        }
+        return best;
+    }
+
+    /**
+     * @return the number of nodes in use
+     */
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the share of the capacity in use, 0.0-1.0
+     */
+    public double getFillLevel() {
+        return (double) size / capacity;
+    }
+
+    /**
+     * @return the memory held by the arrays, in bytes
+     */
+    public long getMemoryBytes() {
+        return (long) capacity * BYTES_PER_NODE;
+    }
+}
@@ -0,0 +1,147 @@
+package dk.easv.bll.bot.search;
+
+import dk.easv.bll.game.IGameState;
+
+/**
+ * Decides how long a bot may think about one move, from IGameState.getTimePerMove().
+ *
+ * Every move gets two System.nanoTime() deadlines:
+ * <ul>
+ *     <li>the hard stop, the time per move minus a safety margin for returning the
+ *     move. A search must stop at the hard stop, whatever it is doing.</li>
+ *     <li>the soft stop, at or before the hard stop. A search should not start new
+ *     work, such as a deeper iteration or another batch of playouts, after it.</li>
+ * </ul>
+ * The soft stop depends on how critical the position looks. A move with no choice
+ * is played at once, the first moves of the game and positions with only a few
+ * moves get half of the time, and a free choice of microboard, where most can go
+ * wrong, gets all of it.
+ *
+ * A time manager is meant for one thread; other threads should be given
+ * getSoftDeadline() or getHardDeadline() instead.
+ */
+public final class TimeManager {
+
+    /**
+     * Time left for returning the move when nothing else is asked for: 20ms.
+     */
+    public static final long DEFAULT_SAFETY_MARGIN_NANOS = 20_000_000L;
+
+    // New memory is cleared at a few GB/s, so this much takes about a quarter of a millisecond
+    private static final long ALLOCATION_BYTES_PER_MILLI = 512L << 10;
+
+    private static final int OPENING_MOVES = 4;
+    private static final int FEW_MOVES = 3;
+    private static final double NORMAL_SHARE = 0.75;
+    private static final double REDUCED_SHARE = 0.5;
+
+    private final long safetyMarginNanos;
+    private final int[] moves = new int[81];
+
+    private long start;
+    private long softDeadline;
+    private long hardDeadline;
+
+    public TimeManager() {
+        this(DEFAULT_SAFETY_MARGIN_NANOS);
+    }
+
+    /**
+     * @param safetyMarginNanos time left for returning the move. At most a fifth of
+     *                          the time per move is kept back, so short time limits
+     *                          are still used.
+     */
+    public TimeManager(long safetyMarginNanos) {
+        if (safetyMarginNanos < 0)
+            throw new IllegalArgumentException("The safety margin can not be negative: " + safetyMarginNanos);
+        this.safetyMarginNanos = safetyMarginNanos;
+    }
+
+    /**
+     * How much memory a bot can allocate during a move and still return in time,
+     * for tables and trees that are created with the first move instead of with the
+     * bot, so bots that are created but never play cost nothing.
+     * @param timePerMoveMillis the time allowed for the move
+     * @return bytes that can be allocated in about a quarter of the time
+     */
+    public static long allocationBudget(int timePerMoveMillis) {
+        return timePerMoveMillis * ALLOCATION_BYTES_PER_MILLI;
+    }
+
+    /**
+     * Starts the clock for a move in the given position, now.
+     * @param state the position to move in
+     */
+    public void start(IGameState state) {
+        int branching = state.getField().getAvailableMoves(moves);
+        start(System.nanoTime(), state.getTimePerMove(), branching, state.getMoveNumber());
+    }
+
+    /**
+     * Starts the clock for a move.
+     * @param startNanos System.nanoTime() when the move was asked for
+     * @param timePerMoveMillis the time allowed for the move
+     * @param branching the number of legal moves
+     * @param moveNumber the number of moves played so far in the game
+     */
+    public void start(long startNanos, int timePerMoveMillis, int branching, int moveNumber) {
+        long budget = timePerMoveMillis * 1_000_000L;
+        long usable = budget - Math.min(safetyMarginNanos, budget / 5);
+        start = startNanos;
+        hardDeadline = startNanos + usable;
+        softDeadline = startNanos + (long) (usable * share(branching, moveNumber));
+    }
+
+    // The part of the usable time to spend before the soft stop
+    private static double share(int branching, int moveNumber) {
+        if (branching <= 1)
+            return 0;
+        if (branching > 9) // the previous move sent us to a decided microboard
+            return 1;
+        if (moveNumber < OPENING_MOVES || branching <= FEW_MOVES)
+            return REDUCED_SHARE;
+        return NORMAL_SHARE;
+    }
+
+    /**
+     * @return true if the soft stop has passed, so no new work should be started
+     */
+    public boolean isSoftStop() {
+        return System.nanoTime() >= softDeadline;
+    }
+
+    /**
+     * @return true if the hard stop has passed, so the search must end now
+     */
+    public boolean isHardStop() {
+        return System.nanoTime() >= hardDeadline;
+    }
+
+    /**
+     * @return System.nanoTime() given to start()
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return System.nanoTime() after which no new work should be started
+     */
+    public long getSoftDeadline() {
+        return softDeadline;
+    }
+
+    /**
+     * @return System.nanoTime() at which the search must stop
+     */
+    public long getHardDeadline() {
+        return hardDeadline;
+    }
+
+    /**
+     * @return nanoseconds since start()
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,125 @@
+package dk.easv.bll.bot.search;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * A fixed size hash table of search results, keyed by the Zobrist position hash.
+ *
+ * Each slot holds one position: its hash and one long of data packing the score,
+ * the depth it was searched to, whether the score is exact or a bound, and the
+ * best move found. probe() returns the data long, or 0 when the position is not
+ * stored, and the static methods unpack it. A slot is overwritten by a different
+ * position, or by the same position searched at least as deep.
+ *
+ * The table may be shared by many searching threads without locks. A slot stores
+ * hash ^ data next to data, so a slot that two threads wrote at the same time,
+ * leaving the key of one and the data of the other, no longer matches any hash
+ * and is treated as empty.
+ */
+public final class TranspositionTable {
+
+    public static final int EXACT = 1;
+    public static final int LOWER_BOUND = 2;
+    public static final int UPPER_BOUND = 3;
+
+    /**
+     * Memory used per slot: the hash and the data long.
+     */
+    public static final int BYTES_PER_ENTRY = 16;
+
+    // data: bits 0-7 move + 1 (0 for none), 8-15 depth, 16-17 bound type, 32-63 score
+    private static final int DEPTH_SHIFT = 8;
+    private static final int TYPE_SHIFT = 16;
+    private static final int SCORE_SHIFT = 32;
+
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+
+    /**
+     * @param bytes memory budget, rounded down to a power of two number of slots
+     */
+    public TranspositionTable(long bytes) {
+        long entries = Long.highestOneBit(Math.max(2, Math.min(1L << 30, bytes / BYTES_PER_ENTRY)));
+        keys = new long[(int) entries];
+        data = new long[(int) entries];
+        mask = (int) entries - 1;
+    }
+
+    /**
+     * @param hash position hash
+     * @return the stored data for the position, or 0 if it is not stored
+     */
+    public long probe(long hash) {
+        int slot = (int) hash & mask;
+        long stored = (long) LONGS.getOpaque(data, slot);
+        return ((long) LONGS.getOpaque(keys, slot) ^ stored) == hash ? stored : 0L;
+    }
+
+    /**
+     * @param hash position hash
+     * @param depth depth the position was searched to, 0-255
+     * @param type EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param score the score found
+     * @param move packed cell index of the best move, or -1 if there is none
+     */
+    public void store(long hash, int depth, int type, int score, int move) {
+        int slot = (int) hash & mask;
+        long stored = probe(hash);
+        if (stored != 0L && depth(stored) > depth)
+            return;
+        long packed = pack(depth, type, score, move);
+        LONGS.setOpaque(keys, slot, hash ^ packed);
+        LONGS.setOpaque(data, slot, packed);
+    }
+
+    /**
+     * Empties the table. Must not run while other threads use it.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(data, 0L);
+    }
+
+    /**
+     * @return the number of slots
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    static long pack(int depth, int type, int score, int move) {
+        return ((long) score << SCORE_SHIFT)
+                | ((long) type << TYPE_SHIFT)
+                | ((long) Math.min(depth, 255) << DEPTH_SHIFT)
+                | (move + 1);
+    }
+
+    /**
+     * @param data data returned by probe()
+     * @return the best move, or -1 if none is stored
+     */
+    public static int move(long data) {
+        return (int) (data & 0xFF) - 1;
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    /**
+     * @param data data returned by probe()
+     * @return EXACT, LOWER_BOUND or UPPER_BOUND, or 0 if nothing is stored
+     */
+    public static int type(long data) {
+        return (int) (data >>> TYPE_SHIFT) & 3;
+    }
+
+    public static int score(long data) {
+        return (int) (data >> SCORE_SHIFT);
+    }
+}
@@ -0,0 +1,405 @@
+package dk.easv.bll.field;
+
+import java.util.function.IntConsumer;
+
+/**
+ * An IField that keeps the position in bit masks instead of Strings.
+ *
+ * Cells are addressed by the packed cell index from {@link IField#cellIndex(int, int)},
+ * which numbers the cells microboard by microboard, so every microboard is a
+ * contiguous 9 bit pattern. Each player's stones form an 81 bit mask, split into a
+ * low word holding microboards 0-6 (63 bits) and a high word holding microboards 7-8.
+ * The macroboard is kept as 9 bit masks of won, tied and active microboards.
+ *
+ * getBoard() and getMacroboard() return String views that are built lazily and
+ * refreshed in place after the position changes. They are read-only snapshots:
+ * writes into the returned arrays are not seen by the field unless the arrays are
+ * handed back through setBoard()/setMacroboard().
+ */
+public class BitboardField implements IField {
+
+    private static final int LOW_BOARDS = 7;
+    private static final int BOARD_MASK = 0x1FF;
+    private static final int[] CELL_X = new int[81];
+    private static final int[] CELL_Y = new int[81];
+
+    static {
+        for (int i = 0; i < 81; i++) {
+            CELL_X[i] = IField.cellX(i);
+            CELL_Y[i] = IField.cellY(i);
+        }
+    }
+
+    private final long[] low = new long[2];
+    private final int[] high = new int[2];
+    private final int[] macroWon = new int[2];
+    private int macroTied;
+    private int macroActive;
+
+    private final String[][] boardView = new String[9][9];
+    private final String[][] macroView = new String[3][3];
+    private boolean viewDirty = true;
+
+    public BitboardField() {
+        clearBoard();
+    }
+
+    public BitboardField(BitboardField other) {
+        copyFrom(other);
+    }
+
+    /**
+     * Overwrites this field with the position of another BitboardField.
+     * @param other the field to copy
+     */
+    public void copyFrom(BitboardField other) {
+        low[0] = other.low[0];
+        low[1] = other.low[1];
+        high[0] = other.high[0];
+        high[1] = other.high[1];
+        macroWon[0] = other.macroWon[0];
+        macroWon[1] = other.macroWon[1];
+        macroTied = other.macroTied;
+        macroActive = other.macroActive;
+        viewDirty = true;
+    }
+
+    @Override
+    public void clearBoard() {
+        low[0] = low[1] = 0L;
+        high[0] = high[1] = 0;
+        macroWon[0] = macroWon[1] = 0;
+        macroTied = 0;
+        macroActive = BOARD_MASK;
+        viewDirty = true;
+    }
+
+    @Override
+    public int getAvailableMoves(int[] moves) {
+        int count = 0;
+        int active = macroActive;
+        while (active != 0) {
+            int board = Integer.numberOfTrailingZeros(active);
+            int free = ~getOccupied(board) & BOARD_MASK;
+            while (free != 0) {
+                moves[count++] = board * 9 + Integer.numberOfTrailingZeros(free);
+                free &= free - 1;
+            }
+            active &= active - 1;
+        }
+        return count;
+    }
+
+    @Override
+    public void getAvailableMovesMask(long[] mask) {
+        long lowMask = 0L;
+        long highMask = 0L;
+        int active = macroActive;
+        while (active != 0) {
+            int board = Integer.numberOfTrailingZeros(active);
+            long free = ~getOccupied(board) & BOARD_MASK;
+            if (board < LOW_BOARDS)
+                lowMask |= free << (board * 9);
+            else
+                highMask |= free << ((board - LOW_BOARDS) * 9);
+            active &= active - 1;
+        }
+        mask[0] = lowMask;
+        mask[1] = highMask;
+    }
+
+    @Override
+    public void forEachAvailableMove(IntConsumer visitor) {
+        int active = macroActive;
+        while (active != 0) {
+            int board = Integer.numberOfTrailingZeros(active);
+            int free = ~getOccupied(board) & BOARD_MASK;
+            while (free != 0) {
+                visitor.accept(board * 9 + Integer.numberOfTrailingZeros(free));
+                free &= free - 1;
+            }
+            active &= active - 1;
+        }
+    }
+
+    @Override
+    public String getPlayerId(int column, int row) {
+        return IField.cellString(getCell(IField.cellIndex(column, row)));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return (low[0] | low[1]) == 0L && (high[0] | high[1]) == 0;
+    }
+
+    @Override
+    public boolean isFull() {
+        return (low[0] | low[1]) == (1L << 63) - 1
+                && (high[0] | high[1]) == (1 << 18) - 1;
+    }
+
+    @Override
+    public Boolean isInActiveMicroboard(int x, int y) {
+        if (x < 0 || 9 <= x || y < 0 || 9 <= y)
+            return false;
+        return (macroActive & (1 << ((x / 3) * 3 + y / 3))) != 0;
+    }
+
+    @Override
+    public byte getCell(int index) {
+        int owner = getOwner(index);
+        return owner < 0 ? CELL_EMPTY : (byte) owner;
+    }
+
+    /**
+     * Sets a board cell. Only CELL_PLAYER0, CELL_PLAYER1 and CELL_EMPTY can be
+     * stored in the bit masks.
+     */
+    @Override
+    public void setCell(int index, byte code) {
+        if (code != CELL_PLAYER0 && code != CELL_PLAYER1 && code != CELL_EMPTY)
+            throw new IllegalArgumentException("Board cells can only hold a player or be empty: " + code);
+        remove(index);
+        if (code != CELL_EMPTY)
+            place(index, code);
+    }
+
+    @Override
+    public byte getMacroCell(int micro) {
+        int bit = 1 << micro;
+        if ((macroWon[0] & bit) != 0) return CELL_PLAYER0;
+        if ((macroWon[1] & bit) != 0) return CELL_PLAYER1;
+        if ((macroTied & bit) != 0) return CELL_TIE;
+        if ((macroActive & bit) != 0) return CELL_AVAILABLE;
+        return CELL_EMPTY;
+    }
+
+    @Override
+    public void setMacroCell(int micro, byte code) {
+        clearMicroboardState(micro);
+        switch (code) {
+            case CELL_PLAYER0:
+            case CELL_PLAYER1:
+                setMicroboardWinner(micro, code);
+                break;
+            case CELL_TIE:
+                setMicroboardTied(micro);
+                break;
+            case CELL_AVAILABLE:
+                macroActive |= 1 << micro;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @param index packed cell index
+     * @return the player (0 or 1) occupying the cell, or -1 if it is empty
+     */
+    public int getOwner(int index) {
+        if (index < 63) {
+            long bit = 1L << index;
+            if ((low[0] & bit) != 0) return 0;
+            if ((low[1] & bit) != 0) return 1;
+        } else {
+            int bit = 1 << (index - 63);
+            if ((high[0] & bit) != 0) return 0;
+            if ((high[1] & bit) != 0) return 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Places a stone for the given player, without any rule checking.
+     * @param index packed cell index
+     * @param player 0 or 1
+     */
+    public void place(int index, int player) {
+        if (index < 63)
+            low[player] |= 1L << index;
+        else
+            high[player] |= 1 << (index - 63);
+        viewDirty = true;
+    }
+
+    /**
+     * Removes whatever stone occupies the given cell.
+     * @param index packed cell index
+     */
+    public void remove(int index) {
+        if (index < 63) {
+            long keep = ~(1L << index);
+            low[0] &= keep;
+            low[1] &= keep;
+        } else {
+            int keep = ~(1 << (index - 63));
+            high[0] &= keep;
+            high[1] &= keep;
+        }
+        viewDirty = true;
+    }
+
+    /**
+     * @param player 0 or 1
+     * @param board microboard number, 0-8
+     * @return the 9 bit pattern of the player's stones on that microboard
+     */
+    public int getMicroboard(int player, int board) {
+        if (board < LOW_BOARDS)
+            return (int) (low[player] >>> (board * 9)) & BOARD_MASK;
+        return (high[player] >>> ((board - LOW_BOARDS) * 9)) & BOARD_MASK;
+    }
+
+    @Override
+    public int getEmptyCells(int micro) {
+        return 9 - Integer.bitCount(getOccupied(micro));
+    }
+
+    /**
+     * @param board microboard number, 0-8
+     * @return the 9 bit pattern of occupied cells on that microboard
+     */
+    public int getOccupied(int board) {
+        return getMicroboard(0, board) | getMicroboard(1, board);
+    }
+
+    /**
+     * @param player 0 or 1
+     * @return the low word (microboards 0-6) of the player's stone mask
+     */
+    public long getStonesLow(int player) {
+        return low[player];
+    }
+
+    /**
+     * @param player 0 or 1
+     * @return the high word (microboards 7-8) of the player's stone mask
+     */
+    public int getStonesHigh(int player) {
+        return high[player];
+    }
+
+    /**
+     * @param player 0 or 1
+     * @return 9 bit mask of the microboards won by the player
+     */
+    public int getWonMicroboards(int player) {
+        return macroWon[player];
+    }
+
+    /**
+     * @return 9 bit mask of the microboards that ended in a tie
+     */
+    public int getTiedMicroboards() {
+        return macroTied;
+    }
+
+    /**
+     * @return 9 bit mask of the microboards that are still undecided
+     */
+    @Override
+    public int getOpenMicroboards() {
+        return ~(macroWon[0] | macroWon[1] | macroTied) & BOARD_MASK;
+    }
+
+    /**
+     * @return 9 bit mask of the microboards the next move may be played in
+     */
+    @Override
+    public int getActiveMicroboards() {
+        return macroActive;
+    }
+
+    /**
+     * Sets the microboards the next move may be played in. Decided microboards
+     * are never active, so they are removed from the mask.
+     * @param mask 9 bit mask of microboards
+     */
+    @Override
+    public void setActiveMicroboards(int mask) {
+        macroActive = mask & getOpenMicroboards();
+        viewDirty = true;
+    }
+
+    /**
+     * Marks a microboard as won by a player on the macroboard.
+     * @param board microboard number, 0-8
+     * @param player 0 or 1
+     */
+    public void setMicroboardWinner(int board, int player) {
+        int bit = 1 << board;
+        macroWon[player] |= bit;
+        macroActive &= ~bit;
+        viewDirty = true;
+    }
+
+    /**
+     * Marks a microboard as tied on the macroboard.
+     * @param board microboard number, 0-8
+     */
+    public void setMicroboardTied(int board) {
+        int bit = 1 << board;
+        macroTied |= bit;
+        macroActive &= ~bit;
+        viewDirty = true;
+    }
+
+    /**
+     * Returns a microboard to the undecided, inactive state.
+     * @param board microboard number, 0-8
+     */
+    public void clearMicroboardState(int board) {
+        int clear = ~(1 << board);
+        macroWon[0] &= clear;
+        macroWon[1] &= clear;
+        macroTied &= clear;
+        macroActive &= clear;
+        viewDirty = true;
+    }
+
+    @Override
+    public String[][] getBoard() {
+        refreshView();
+        return boardView;
+    }
+
+    @Override
+    public String[][] getMacroboard() {
+        refreshView();
+        return macroView;
+    }
+
+    @Override
+    public void setBoard(String[][] board) {
+        low[0] = low[1] = 0L;
+        high[0] = high[1] = 0;
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                byte code = IField.cellCode(board[i][j]);
+                if (code == CELL_PLAYER0 || code == CELL_PLAYER1)
+                    place(IField.cellIndex(i, j), code);
+            }
+        }
+        viewDirty = true;
+    }
+
+    @Override
+    public void setMacroboard(String[][] macroboard) {
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++)
+                setMacroCell(i * 3 + j, IField.cellCode(macroboard[i][j]));
+        }
+    }
+
+    private void refreshView() {
+        if (!viewDirty)
+            return;
+        for (int index = 0; index < 81; index++) {
+            boardView[CELL_X[index]][CELL_Y[index]] = IField.cellString(getCell(index));
+        }
+        for (int board = 0; board < 9; board++)
+            macroView[board / 3][board % 3] = IField.cellString(getMacroCell(board));
+        viewDirty = false;
+    }
+}
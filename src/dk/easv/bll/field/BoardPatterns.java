@@ -0,0 +1,227 @@
+package dk.easv.bll.field;
+
+/**
+ * Precomputed answers for 3x3 boards, used for both microboards and the macroboard.
+ *
+ * A 3x3 board is described by a 9 bit occupancy pattern where the cell at local
+ * position (x, y) is bit x*3 + y, the same order as the packed cell index of IField.
+ * The tables hold one entry per pattern, so checking for a line or a full board
+ * is a single array lookup.
+ */
+public final class BoardPatterns {
+
+    public static final int FULL = 0x1FF;
+    public static final int ALL_LINES = 0xFF;
+
+    private static final int[] LINES = {
+            0007, 0070, 0700,   // x = 0, 1, 2
+            0111, 0222, 0444,   // y = 0, 1, 2
+            0421, 0124          // diagonal and anti diagonal
+    };
+    private static final byte LINE = 1;
+    private static final byte COMPLETE = 2;
+    private static final byte[] FLAGS = new byte[512];
+    // LINES_THROUGH[cell] has bit n set when LINES[n] contains the cell.
+    private static final int[] LINES_THROUGH = new int[9];
+    // BLOCKED[p] has bit n set when LINES[n] holds a cell of pattern p,
+    // TWOS[p] when it holds exactly two.
+    private static final int[] BLOCKED = new int[512];
+    private static final int[] TWOS = new int[512];
+    // COMPLETING[p] has the cells outside p that finish a line of pattern p
+    private static final int[] COMPLETING = new int[512];
+
+    static {
+        for (int line = 0; line < LINES.length; line++)
+            for (int cell = 0; cell < 9; cell++) {
+                if ((LINES[line] & (1 << cell)) != 0)
+                    LINES_THROUGH[cell] |= 1 << line;
+            }
+        for (int pattern = 0; pattern < 512; pattern++) {
+            for (int line = 0; line < LINES.length; line++) {
+                int cells = Integer.bitCount(pattern & LINES[line]);
+                if (cells == 3)
+                    FLAGS[pattern] |= LINE;
+                if (cells == 2) {
+                    TWOS[pattern] |= 1 << line;
+                    COMPLETING[pattern] |= LINES[line] & ~pattern;
+                }
+                if (cells > 0)
+                    BLOCKED[pattern] |= 1 << line;
+            }
+            if (pattern == FULL)
+                FLAGS[pattern] |= COMPLETE;
+        }
+    }
+
+    private BoardPatterns() {
+    }
+
+    /**
+     * @param pattern 9 bit pattern of one player's cells
+     * @return true if the pattern contains three in a row
+     */
+    public static boolean hasLine(int pattern) {
+        return (FLAGS[pattern] & LINE) != 0;
+    }
+
+    /**
+     * @param pattern 9 bit pattern of the occupied (or decided) cells
+     * @return true if every cell of the board is taken
+     */
+    public static boolean isFull(int pattern) {
+        return (FLAGS[pattern] & COMPLETE) != 0;
+    }
+
+    /**
+     * @param cell cell of the 3x3 board, localX*3 + localY
+     * @return 8 bit mask of the lines through the cell, see {@link #blockedLines(int)}
+     */
+    public static int linesThrough(int cell) {
+        return LINES_THROUGH[cell];
+    }
+
+    /**
+     * Lines are numbered 0-7: the three columns, the three rows and the two diagonals.
+     * @param blocked 9 bit pattern of cells a player can not use
+     * @return 8 bit mask of the lines that contain at least one blocked cell
+     */
+    public static int blockedLines(int blocked) {
+        return BLOCKED[blocked];
+    }
+
+    /**
+     * Counts the lines a player is one cell away from completing.
+     * @param own 9 bit pattern of the player's cells
+     * @param blocked 9 bit pattern of the cells the player can not use
+     * @return the number of lines with two of the player's cells and a free third cell
+     */
+    public static int countTwos(int own, int blocked) {
+        return Integer.bitCount(TWOS[own] & ~BLOCKED[blocked]);
+    }
+
+    /**
+     * The cells a player needs to complete a line. Only the player's own cells are
+     * known here, so cells taken by the opponent must be removed by the caller.
+     * @param own 9 bit pattern of the player's cells
+     * @return 9 bit pattern of the cells that would give the player three in a row
+     */
+    public static int completingCells(int own) {
+        return COMPLETING[own];
+    }
+
+    /**
+     * @param localX column within the 3x3 board, 0-2
+     * @param localY row within the 3x3 board, 0-2
+     * @return the pattern bit of that cell
+     */
+    public static int bit(int localX, int localY) {
+        return 1 << (localX * 3 + localY);
+    }
+
+    /**
+     * Reads the pattern of a player's cells from a 3x3 block of a String board.
+     * @param board the board to read
+     * @param startX first column of the block
+     * @param startY first row of the block
+     * @param player the player id to match
+     * @return 9 bit pattern of the cells holding player
+     */
+    public static int playerPattern(String[][] board, int startX, int startY, String player) {
+        int pattern = 0;
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++) {
+                if (board[startX + i][startY + k].equals(player))
+                    pattern |= bit(i, k);
+            }
+        return pattern;
+    }
+
+    /**
+     * Reads the pattern of taken cells from a 3x3 block of a String board,
+     * that is every cell which is neither EMPTY_FIELD nor AVAILABLE_FIELD.
+     * @param board the board to read
+     * @param startX first column of the block
+     * @param startY first row of the block
+     * @return 9 bit pattern of the taken cells
+     */
+    public static int takenPattern(String[][] board, int startX, int startY) {
+        int pattern = 0;
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++) {
+                String value = board[startX + i][startY + k];
+                if (!value.equals(IField.EMPTY_FIELD) && !value.equals(IField.AVAILABLE_FIELD))
+                    pattern |= bit(i, k);
+            }
+        return pattern;
+    }
+
+    /**
+     * @param field the field to read
+     * @param micro microboard number, 0-8
+     * @param player the cell code of the player
+     * @return 9 bit pattern of the microboard cells holding player
+     */
+    public static int playerPattern(IField field, int micro, byte player) {
+        int pattern = 0;
+        for (int local = 0; local < 9; local++) {
+            if (field.getCell(micro * 9 + local) == player)
+                pattern |= 1 << local;
+        }
+        return pattern;
+    }
+
+    /**
+     * Tells whether a move would win its microboard, using the completing cells of
+     * the player's pattern, so nothing is copied or played.
+     * @param field the field to read
+     * @param index packed cell index of the move (see IField.cellIndex)
+     * @param player the cell code of the player making the move
+     * @return true if the cell completes a line of the player's cells in its microboard
+     */
+    public static boolean completesLine(IField field, int index, byte player) {
+        int own = playerPattern(field, index / 9, player);
+        return (COMPLETING[own] & (1 << (index % 9))) != 0;
+    }
+
+    /**
+     * @param field the field to read
+     * @param micro microboard number, 0-8
+     * @return 9 bit pattern of the microboard cells that are not empty
+     */
+    public static int takenPattern(IField field, int micro) {
+        int pattern = 0;
+        for (int local = 0; local < 9; local++) {
+            if (field.getCell(micro * 9 + local) != IField.CELL_EMPTY)
+                pattern |= 1 << local;
+        }
+        return pattern;
+    }
+
+    /**
+     * @param field the field to read
+     * @param player the cell code of the player
+     * @return 9 bit pattern of the microboards won by player
+     */
+    public static int macroPattern(IField field, byte player) {
+        int pattern = 0;
+        for (int micro = 0; micro < 9; micro++) {
+            if (field.getMacroCell(micro) == player)
+                pattern |= 1 << micro;
+        }
+        return pattern;
+    }
+
+    /**
+     * @param field the field to read
+     * @return 9 bit pattern of the microboards that are won or tied
+     */
+    public static int decidedPattern(IField field) {
+        int pattern = 0;
+        for (int micro = 0; micro < 9; micro++) {
+            byte value = field.getMacroCell(micro);
+            if (value != IField.CELL_EMPTY && value != IField.CELL_AVAILABLE)
+                pattern |= 1 << micro;
+        }
+        return pattern;
+    }
+}
@@ -1,15 +1,19 @@
 package dk.easv.bll.field;
 
-import dk.easv.bll.move.IMove;
-import dk.easv.bll.move.Move;
-
-import java.util.ArrayList;
-import java.util.List;
+import java.util.function.IntConsumer;
 
 public class Field implements IField{
 
-    volatile String[][] board = new String[9][9];
-    volatile String[][] macroBoard = new String[3][3];
+    // Cell codes are the real position, indexed by packed cell index and microboard number.
+    // The String arrays are the compatibility view, written alongside every code change.
+    private final byte[] cells = new byte[81];
+    private final byte[] macroCells = new byte[9];
+    // Kept in step with the codes by storeCell/storeMacroCell.
+    private final byte[] emptyCells = new byte[9];
+    private int activeMask;
+    private int openMask;
+    private final String[][] board = new String[9][9];
+    private final String[][] macroBoard = new String[3][3];
 
     public Field() {
         clearBoard();
@@ -17,29 +21,51 @@ public class Field implements IField{
 
     @Override
     public void clearBoard() {
-        board = new String[9][9];
-        for (int i = 0; i < board.length; i++)
-            for (int k = 0; k < board[i].length; k++) {
-                board[i][k] = EMPTY_FIELD;
-            }
-        for (int i = 0; i < macroBoard.length; i++)
-            for (int k = 0; k < macroBoard[i].length; k++) {
-                macroBoard[i][k] = AVAILABLE_FIELD;
-            }
+        for (int i = 0; i < cells.length; i++)
+            setCell(i, CELL_EMPTY);
+        for (int i = 0; i < macroCells.length; i++)
+            setMacroCell(i, CELL_AVAILABLE);
     }
 
     @Override
-    public List<IMove> getAvailableMoves() {
-        List<IMove> availMoves = new ArrayList<>();
+    public int getAvailableMoves(int[] moves) {
+        int count = 0;
+        for (int active = activeMask; active != 0; active &= active - 1) {
+            int micro = Integer.numberOfTrailingZeros(active);
+            for (int index = micro * 9; index < micro * 9 + 9; index++) {
+                if (cells[index] == CELL_EMPTY)
+                    moves[count++] = index;
+            }
+        }
+        return count;
+    }
 
-        for (int i = 0; i < board.length; i++)
-            for (int k = 0; k < board[i].length; k++) {
-                if(isInActiveMicroboard(i,k) && board[i][k].equals(EMPTY_FIELD)) {
-                    availMoves.add(new Move(i,k));
-                }
+    @Override
+    public void getAvailableMovesMask(long[] mask) {
+        mask[0] = 0L;
+        mask[1] = 0L;
+        for (int active = activeMask; active != 0; active &= active - 1) {
+            int micro = Integer.numberOfTrailingZeros(active);
+            for (int index = micro * 9; index < micro * 9 + 9; index++) {
+                if (cells[index] != CELL_EMPTY)
+                    continue;
+                if (index < 63)
+                    mask[0] |= 1L << index;
+                else
+                    mask[1] |= 1L << (index - 63);
+            }
         }
+    }
 
-        return availMoves;
+    @Override
+    public void forEachAvailableMove(IntConsumer visitor) {
+        for (int active = activeMask; active != 0; active &= active - 1) {
+            int micro = Integer.numberOfTrailingZeros(active);
+            for (int index = micro * 9; index < micro * 9 + 9; index++) {
+                if (cells[index] == CELL_EMPTY)
+                    visitor.accept(index);
+            }
+        }
     }
 
     @Override
@@ -49,30 +75,88 @@ public class Field implements IField{
 
     @Override
     public boolean isEmpty() {
-        for (int i = 0; i < board.length; i++)
-            for (int k = 0; k < board[i].length; k++) {
-                if(board[i][k]!=EMPTY_FIELD && board[i][k]!=AVAILABLE_FIELD)
-                    return false;
-            }
+        for (byte empty : emptyCells) {
+            if (empty != 9)
+                return false;
+        }
         return true;
     }
 
     @Override
     public boolean isFull() {
-        for (int i = 0; i < board.length; i++)
-            for (int k = 0; k < board[i].length; k++) {
-                if(board[i][k]==EMPTY_FIELD || board[i][k]==AVAILABLE_FIELD)
-                    return false;
-            }
+        for (byte empty : emptyCells) {
+            if (empty != 0)
+                return false;
+        }
         return true;
     }
 
     @Override
     public Boolean isInActiveMicroboard(int x, int y) {
-        int xTrans = x>0 ? x/3 : 0;
-        int yTrans = y>0 ? y/3 : 0;
-        String value = macroBoard[xTrans][yTrans];
-        return value.equals(AVAILABLE_FIELD);
+        if (x < 0 || 9 <= x || y < 0 || 9 <= y)
+            return false;
+        return (activeMask & (1 << ((x / 3) * 3 + y / 3))) != 0;
+    }
+
+    @Override
+    public byte getCell(int index) {
+        return cells[index];
+    }
+
+    @Override
+    public void setCell(int index, byte code) {
+        storeCell(index, code);
+        board[IField.cellX(index)][IField.cellY(index)] = IField.cellString(code);
+    }
+
+    @Override
+    public byte getMacroCell(int micro) {
+        return macroCells[micro];
+    }
+
+    @Override
+    public void setMacroCell(int micro, byte code) {
+        storeMacroCell(micro, code);
+        macroBoard[micro / 3][micro % 3] = IField.cellString(code);
+    }
+
+    @Override
+    public int getActiveMicroboards() {
+        return activeMask;
+    }
+
+    @Override
+    public void setActiveMicroboards(int mask) {
+        mask &= openMask;
+        for (int changed = activeMask ^ mask; changed != 0; changed &= changed - 1) {
+            int micro = Integer.numberOfTrailingZeros(changed);
+            setMacroCell(micro, (mask & (1 << micro)) != 0 ? CELL_AVAILABLE : CELL_EMPTY);
+        }
+    }
+
+    @Override
+    public int getOpenMicroboards() {
+        return openMask;
+    }
+
+    @Override
+    public int getEmptyCells(int micro) {
+        return emptyCells[micro];
+    }
+
+    private void storeCell(int index, byte code) {
+        boolean wasEmpty = cells[index] == CELL_EMPTY;
+        boolean isEmpty = code == CELL_EMPTY;
+        if (wasEmpty != isEmpty)
+            emptyCells[index / 9] += isEmpty ? 1 : -1;
+        cells[index] = code;
+    }
+
+    private void storeMacroCell(int micro, byte code) {
+        int bit = 1 << micro;
+        macroCells[micro] = code;
+        activeMask = code == CELL_AVAILABLE ? activeMask | bit : activeMask & ~bit;
+        openMask = code == CELL_AVAILABLE || code == CELL_EMPTY ? openMask | bit : openMask & ~bit;
     }
 
     @Override
@@ -91,7 +175,9 @@ public class Field implements IField{
         //NOTE: Cloning here, for simulation purposes
         for (int i = 0; i < 9; i++) {
             for (int j = 0; j < 9; j++) {
-                this.board[i][j] = board[i][j];
+                String value = board[i][j];
+                storeCell(IField.cellIndex(i, j), IField.cellCode(value));
+                this.board[i][j] = value;
             }
         }
     }
@@ -102,7 +188,9 @@ public class Field implements IField{
         //NOTE: Cloning here, for simulation purposes
         for (int i = 0; i < 3; i++) {
             for (int j = 0; j < 3; j++) {
-                this.macroBoard[i][j] = macroboard[i][j];
+                String value = macroboard[i][j];
+                storeMacroCell(i * 3 + j, IField.cellCode(value));
+                this.macroBoard[i][j] = value;
             }
         }
     }
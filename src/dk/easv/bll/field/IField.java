@@ -1,7 +1,10 @@
 package dk.easv.bll.field;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.IntConsumer;
 import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
 
 /**
  *
@@ -11,6 +14,77 @@ public interface IField {
 
     String AVAILABLE_FIELD = "-1";
     String EMPTY_FIELD = ".";
+    String TIE_FIELD = "TIE";
+
+    /*
+     * Cell codes used by the rules engine instead of the Strings above.
+     * The player codes are the player ids, so (byte) currentPlayer is a valid code.
+     * Board cells hold CELL_PLAYER0, CELL_PLAYER1 or CELL_EMPTY, macroboard cells
+     * hold any of the five.
+     */
+    byte CELL_PLAYER0 = 0;
+    byte CELL_PLAYER1 = 1;
+    byte CELL_EMPTY = 2;
+    byte CELL_AVAILABLE = 3;
+    byte CELL_TIE = 4;
+
+    /**
+     * @param code a cell code
+     * @return the String the cell code is shown as in getBoard()/getMacroboard()
+     */
+    static String cellString(byte code) {
+        switch (code) {
+            case CELL_PLAYER0: return "0";
+            case CELL_PLAYER1: return "1";
+            case CELL_AVAILABLE: return AVAILABLE_FIELD;
+            case CELL_TIE: return TIE_FIELD;
+            default: return EMPTY_FIELD;
+        }
+    }
+
+    /**
+     * Reads a cell code from the String form. Any String that is not a known
+     * marker is taken to mean a cell held by neither player, CELL_TIE.
+     * @param value the String form of a cell
+     * @return the cell code
+     */
+    static byte cellCode(String value) {
+        switch (value) {
+            case "0": return CELL_PLAYER0;
+            case "1": return CELL_PLAYER1;
+            case EMPTY_FIELD: return CELL_EMPTY;
+            case AVAILABLE_FIELD: return CELL_AVAILABLE;
+            default: return CELL_TIE;
+        }
+    }
+
+    /**
+     * Packs a board position into a cell index in the range 0-80.
+     * Cells are numbered microboard by microboard, so the nine cells of
+     * microboard m (numbered (x/3)*3 + y/3) are the indices m*9 to m*9+8.
+     * @param x Column, 0-8
+     * @param y Row, 0-8
+     * @return the packed cell index
+     */
+    static int cellIndex(int x, int y) {
+        return ((x / 3) * 3 + y / 3) * 9 + (x % 3) * 3 + y % 3;
+    }
+
+    /**
+     * @param index packed cell index
+     * @return the column of the cell
+     */
+    static int cellX(int index) {
+        return (index / 27) * 3 + (index % 9) / 3;
+    }
+
+    /**
+     * @param index packed cell index
+     * @return the row of the cell
+     */
+    static int cellY(int index) {
+        return ((index / 9) % 3) * 3 + index % 3;
+    }
 
     /**
      * Clears the board
@@ -20,9 +94,41 @@ public interface IField {
     /**
      * Generates a list of available moves, moves are limited to the 3x3 area 
      * indicated by the opponents last move, and limited by occupied spaces.
+     * The moves are listed in ascending packed cell index order.
+     * This allocates a new list and new moves on every call, simulations should
+     * prefer {@link #getAvailableMoves(int[])} or {@link #forEachAvailableMove(IntConsumer)}.
      * @return List of currently available moves
      */
-    List<IMove> getAvailableMoves();
+    default List<IMove> getAvailableMoves() {
+        int[] moves = new int[81];
+        int count = getAvailableMoves(moves);
+        List<IMove> availMoves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            availMoves.add(Move.of(moves[i]));
+        return availMoves;
+    }
+
+    /**
+     * Writes the packed cell index of every available move into a caller supplied
+     * buffer, in ascending order. Nothing is allocated.
+     * @param moves buffer with room for at least 81 entries
+     * @return the number of available moves written to the buffer
+     */
+    int getAvailableMoves(int[] moves);
+
+    /**
+     * Writes the available moves as an 81 bit mask over packed cell indices.
+     * Bit i of mask[0] is cell i for cells 0-62, bit i of mask[1] is cell 63+i.
+     * @param mask array of at least two longs to write the mask into
+     */
+    void getAvailableMovesMask(long[] mask);
+
+    /**
+     * Calls the visitor with the packed cell index of every available move,
+     * in ascending order.
+     * @param visitor receives packed cell indices
+     */
+    void forEachAvailableMove(IntConsumer visitor);
 
     /**
      * Returns the player id on given column and row
@@ -51,11 +157,66 @@ public interface IField {
     Boolean isInActiveMicroboard(int x, int y);
 
     /**
+     * @param index packed cell index
+     * @return the cell code of the board cell
+     */
+    byte getCell(int index);
+
+    /**
+     * Sets a board cell, without any rule checking.
+     * @param index packed cell index
+     * @param code CELL_PLAYER0, CELL_PLAYER1 or CELL_EMPTY
+     */
+    void setCell(int index, byte code);
+
+    /**
+     * @param micro microboard number, (x/3)*3 + y/3
+     * @return the cell code of the microboard on the macroboard
+     */
+    byte getMacroCell(int micro);
+
+    /**
+     * Sets the state of a microboard on the macroboard, without any rule checking.
+     * @param micro microboard number, (x/3)*3 + y/3
+     * @param code the cell code to set
+     */
+    void setMacroCell(int micro, byte code);
+
+    /**
+     * Kept up to date as macroboard cells change, so reading it costs nothing.
+     * @return 9 bit mask of the microboards marked CELL_AVAILABLE, bit (x/3)*3 + y/3
+     */
+    int getActiveMicroboards();
+
+    /**
+     * Marks exactly the microboards in mask as available and every other
+     * undecided microboard as empty. Decided microboards are left alone.
+     * @param mask 9 bit mask of the microboards to make available
+     */
+    void setActiveMicroboards(int mask);
+
+    /**
+     * @return 9 bit mask of the microboards that are neither won nor tied
+     */
+    int getOpenMicroboards();
+
+    /**
+     * Kept up to date as board cells change, so reading it costs nothing.
+     * @param micro microboard number, (x/3)*3 + y/3
+     * @return the number of empty cells left in the microboard
+     */
+    int getEmptyCells(int micro);
+
+    /**
+     * The String form of the board. The rules engine works on cell codes, and
+     * this view is only kept in step with them by the field itself: writes into
+     * the returned arrays are not seen until they are handed to setBoard().
      * @return the Board (the entire 9x9 board)
      */
     String[][] getBoard();
 
     /**
+     * The String form of the macroboard, see getBoard() about writing into it.
      * @return the Macroboard (the overarching 3x3 board)
      */
     String[][] getMacroboard();
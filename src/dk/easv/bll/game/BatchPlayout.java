@@ -0,0 +1,352 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.BitboardField;
+import dk.easv.bll.field.BoardPatterns;
+
+import java.util.SplittableRandom;
+
+/**
+ * Plays a block of random games at the same time, for flat Monte Carlo bots.
+ *
+ * A batch is LANES games started from the same position, each with its own first
+ * move taken in turn from the legal moves of the position. The games advance in
+ * lockstep, one ply per step, and a game that has ended simply has no moves left.
+ * The state of the games is kept one array per value with one entry per game, so
+ * each step is a few plain loops over the games: one to draw random numbers, one
+ * to count the free cells of every active microboard, and one to pick and play the
+ * moves. The first two are simple enough for the JIT to unroll and vectorise, and
+ * none of them create objects.
+ *
+ * The games follow the same rules as GameSimulator and end on a win, a tie or a dead
+ * draw, which counts as a tie. In a loaded position that is already a dead draw,
+ * every first move counts as a tie without playing the game. Results are added up
+ * per first move, seen from the player to move in the loaded position.
+ *
+ * A batch playout is not thread safe, create one per thread.
+ */
+public final class BatchPlayout {
+
+    /**
+     * Number of games in a batch.
+     */
+    public static final int LANES = 64;
+
+    private static final int FULL = BoardPatterns.FULL;
+    private static final int RUNNING = -2;
+    private static final int TIE = -1;
+    // NTH_BIT[pattern * 9 + n] is the position of the n-th set bit of the pattern
+    private static final byte[] NTH_BIT = new byte[512 * 9];
+
+    static {
+        for (int pattern = 0; pattern < 512; pattern++) {
+            int n = 0;
+            for (int bit = 0; bit < 9; bit++) {
+                if ((pattern & (1 << bit)) != 0)
+                    NTH_BIT[pattern * 9 + n++] = (byte) bit;
+            }
+        }
+    }
+
+    private final GameSimulator root = new GameSimulator();
+    private final int[] rootMoves = new int[81];
+    private int rootMoveCount;
+    private boolean rootDeadDraw;
+    private int rootPlayer;
+    private int nextRootMove;
+
+    // The loaded position, copied into every lane at the start of a batch
+    private final int[] rootStones = new int[18];
+    private final int[] rootWon = new int[2];
+    private int rootDecided;
+    private int rootActive;
+    private final int[] rootDeadLines = new int[2];
+
+    // Lane state: stones[player * 9 + micro][lane] is a 9 bit pattern
+    private final int[][] stones = new int[18][LANES];
+    private final int[][] won = new int[2][LANES];
+    private final int[] decided = new int[LANES];
+    private final int[] active = new int[LANES];
+    private final int[][] deadLines = new int[2][LANES];
+    private final int[] result = new int[LANES];
+    private final int[] firstMove = new int[LANES];
+    private final long[] random = new long[LANES];
+    private final long[] draw = new long[LANES];
+    private final int[][] free = new int[9][LANES];
+    private final int[] total = new int[LANES];
+
+    private final long[] wins = new long[81];
+    private final long[] ties = new long[81];
+    private final long[] losses = new long[81];
+    private long playouts;
+
+    /**
+     * @param seed seed of the random moves
+     */
+    public BatchPlayout(long seed) {
+        SplittableRandom seeds = new SplittableRandom(seed);
+        for (int lane = 0; lane < LANES; lane++)
+            random[lane] = seeds.nextLong() | 1L; // xorshift must not start at 0
+    }
+
+    /**
+     * Loads the position to play out, with player moveNumber % 2 to move, and
+     * clears the results.
+     * @param state the position to load. It is only read, and is not kept.
+     */
+    public void load(IGameState state) {
+        root.load(state);
+        rootPlayer = root.getCurrentPlayer();
+        // A dead draw is still played on by the game, so its moves are kept and score as ties
+        rootMoveCount = root.getAvailableMoves(rootMoves);
+        rootDeadDraw = root.isDeadDraw();
+        nextRootMove = 0;
+
+        BitboardField field = root.getField();
+        for (int player = 0; player < 2; player++) {
+            for (int micro = 0; micro < 9; micro++)
+                rootStones[player * 9 + micro] = field.getMicroboard(player, micro);
+            rootWon[player] = field.getWonMicroboards(player);
+        }
+        int tied = field.getTiedMicroboards();
+        rootDecided = rootWon[0] | rootWon[1] | tied;
+        rootActive = field.getActiveMicroboards();
+        rootDeadLines[0] = BoardPatterns.blockedLines(tied | rootWon[1]);
+        rootDeadLines[1] = BoardPatterns.blockedLines(tied | rootWon[0]);
+        clearResults();
+    }
+
+    /**
+     * Forgets the results of all batches played so far.
+     */
+    public void clearResults() {
+        for (int i = 0; i < 81; i++) {
+            wins[i] = 0;
+            ties[i] = 0;
+            losses[i] = 0;
+        }
+        playouts = 0;
+    }
+
+    /**
+     * Plays batches of LANES games from the loaded position.
+     * @param batches number of batches to play
+     */
+    public void run(int batches) {
+        for (int i = 0; i < batches && rootMoveCount > 0; i++)
+            runBatch();
+    }
+
+    /**
+     * Plays batches of LANES games from the loaded position until the deadline.
+     * @param deadline System.nanoTime() at which to stop
+     * @return the number of batches played
+     */
+    public int runUntil(long deadline) {
+        int batches = 0;
+        while (rootMoveCount > 0 && System.nanoTime() < deadline) {
+            runBatch();
+            batches++;
+        }
+        return batches;
+    }
+
+    private void runBatch() {
+        if (rootDeadDraw) {
+            for (int lane = 0; lane < LANES; lane++) {
+                ties[rootMoves[nextRootMove]]++;
+                nextRootMove = nextRootMove + 1 == rootMoveCount ? 0 : nextRootMove + 1;
+            }
+            playouts += LANES;
+            return;
+        }
+        for (int lane = 0; lane < LANES; lane++) {
+            for (int i = 0; i < 18; i++)
+                stones[i][lane] = rootStones[i];
+            won[0][lane] = rootWon[0];
+            won[1][lane] = rootWon[1];
+            decided[lane] = rootDecided;
+            active[lane] = rootActive;
+            deadLines[0][lane] = rootDeadLines[0];
+            deadLines[1][lane] = rootDeadLines[1];
+            result[lane] = RUNNING;
+
+            // Every lane gets the next first move, so they are all played equally often
+            int move = rootMoves[nextRootMove];
+            nextRootMove = nextRootMove + 1 == rootMoveCount ? 0 : nextRootMove + 1;
+            firstMove[lane] = move;
+            play(lane, move / 9, move % 9, rootPlayer);
+        }
+
+        int player = 1 - rootPlayer;
+        while (step(player))
+            player = 1 - player;
+
+        for (int lane = 0; lane < LANES; lane++) {
+            int move = firstMove[lane];
+            int winner = result[lane];
+            if (winner == rootPlayer)
+                wins[move]++;
+            else if (winner == TIE)
+                ties[move]++;
+            else
+                losses[move]++;
+        }
+        playouts += LANES;
+    }
+
+    // Plays one random move in every game still running, returns false when none is
+    private boolean step(int player) {
+        // xorshift64*, the state advances in random[] and the output goes to draw[]
+        for (int lane = 0; lane < LANES; lane++) {
+            long x = random[lane];
+            x ^= x >>> 12;
+            x ^= x << 25;
+            x ^= x >>> 27;
+            random[lane] = x;
+            draw[lane] = x * 0x2545F4914F6CDD1DL;
+        }
+
+        // Free cells of the active microboards, none once a game has ended
+        for (int lane = 0; lane < LANES; lane++)
+            total[lane] = 0;
+        for (int micro = 0; micro < 9; micro++) {
+            int[] player0 = stones[micro];
+            int[] player1 = stones[9 + micro];
+            int[] cells = free[micro];
+            for (int lane = 0; lane < LANES; lane++) {
+                int cellsFree = ~(player0[lane] | player1[lane]) & FULL & -((active[lane] >>> micro) & 1);
+                cells[lane] = cellsFree;
+                total[lane] += Integer.bitCount(cellsFree);
+            }
+        }
+
+        boolean moved = false;
+        for (int lane = 0; lane < LANES; lane++) {
+            int count = total[lane];
+            if (count == 0)
+                continue;
+            // Uniform over the count moves, from the high bits of the random number
+            int n = (int) (((draw[lane] >>> 32) * count) >>> 32);
+            int micro = 0;
+            int inMicro = Integer.bitCount(free[0][lane]);
+            while (n >= inMicro) {
+                n -= inMicro;
+                inMicro = Integer.bitCount(free[++micro][lane]);
+            }
+            play(lane, micro, NTH_BIT[free[micro][lane] * 9 + n], player);
+            moved = true;
+        }
+        return moved;
+    }
+
+    // Plays a legal move in one lane, mirroring GameSimulator.apply()
+    private void play(int lane, int micro, int cell, int player) {
+        int[] own = stones[player * 9 + micro];
+        int pattern = own[lane] | (1 << cell);
+        own[lane] = pattern;
+
+        int bit = 1 << micro;
+        if (BoardPatterns.hasLine(pattern)) {
+            won[player][lane] |= bit;
+            decided[lane] |= bit;
+            deadLines[1 - player][lane] |= BoardPatterns.linesThrough(micro);
+            if (BoardPatterns.hasLine(won[player][lane]))
+                result[lane] = player;
+        } else if (BoardPatterns.isFull(pattern | stones[(1 - player) * 9 + micro][lane])) {
+            decided[lane] |= bit;
+            deadLines[0][lane] |= BoardPatterns.linesThrough(micro);
+            deadLines[1][lane] |= BoardPatterns.linesThrough(micro);
+        }
+
+        int open = ~decided[lane] & FULL;
+        if (result[lane] == RUNNING
+                && (open == 0 || (deadLines[0][lane] & deadLines[1][lane]) == BoardPatterns.ALL_LINES))
+            result[lane] = TIE;
+        if (result[lane] != RUNNING)
+            active[lane] = 0;
+        else
+            active[lane] = (open & (1 << cell)) != 0 ? 1 << cell : open;
+    }
+
+    /**
+     * @param moves buffer of at least 81 entries, filled with the packed cell
+     *              indexes of the first moves
+     * @return the number of first moves, 0 if the loaded position is decided
+     */
+    public int getRootMoves(int[] moves) {
+        System.arraycopy(rootMoves, 0, moves, 0, rootMoveCount);
+        return rootMoveCount;
+    }
+
+    /**
+     * @return the player to move in the loaded position, whose view the results take
+     */
+    public int getRootPlayer() {
+        return rootPlayer;
+    }
+
+    /**
+     * @param move packed cell index of a first move
+     * @return games won by the root player after that move
+     */
+    public long getWins(int move) {
+        return wins[move];
+    }
+
+    /**
+     * @param move packed cell index of a first move
+     * @return games tied after that move, including dead draws
+     */
+    public long getTies(int move) {
+        return ties[move];
+    }
+
+    /**
+     * @param move packed cell index of a first move
+     * @return games lost by the root player after that move
+     */
+    public long getLosses(int move) {
+        return losses[move];
+    }
+
+    /**
+     * @return the first move with the best average result, a win counting 1 and a
+     * tie 1/2, or -1 if the loaded position is decided
+     */
+    public int getBestMove() {
+        int best = -1;
+        double bestValue = -1;
+        for (int i = 0; i < rootMoveCount; i++) {
+            int move = rootMoves[i];
+            long games = wins[move] + ties[move] + losses[move];
+            double value = games == 0 ? 0 : (wins[move] + ties[move] * 0.5) / games;
+            if (value > bestValue) {
+                bestValue = value;
+                best = move;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the number of games played since the last load() or clearResults()
+     */
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    /**
+     * Plays batches from a position on one thread for a given time, to compare
+     * with GameSimulator.benchmark().
+     * @param state the position to play out
+     * @param millis how long to run
+     * @return the number of playouts per second
+     */
+    public static double benchmark(IGameState state, long millis) {
+        BatchPlayout batch = new BatchPlayout(System.nanoTime());
+        batch.load(state);
+        long start = System.nanoTime();
+        batch.runUntil(start + millis * 1_000_000L);
+        return batch.getPlayouts() * 1e9 / (System.nanoTime() - start);
+    }
+}
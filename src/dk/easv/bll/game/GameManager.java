@@ -1,9 +1,9 @@
 package dk.easv.bll.game;
 
 import dk.easv.bll.bot.IBot;
+import dk.easv.bll.field.BoardPatterns;
 import dk.easv.bll.field.IField;
 import dk.easv.bll.move.IMove;
-import dk.easv.bll.move.Move;
 
 /**
  * This is a proposed GameManager for Ultimate Tic-Tac-Toe,
@@ -39,6 +39,23 @@ public class GameManager {
     private IBot bot2 = null;
     private volatile GameOverState gameOver = GameOverState.Active;
 
+    // Macroboard lines each player can no longer complete, one bit per line as in
+    // BoardPatterns.blockedLines(). Updated whenever a microboard is decided.
+    private final int[] deadLines = new int[2];
+
+    // Undo records for makeMove/undoMove, one entry per ply. A move always fills
+    // an empty cell, so no line of play can be deeper than the 81 cells.
+    private static final int MAX_PLIES = 81;
+    private final int[] undoCell = new int[MAX_PLIES];
+    private final int[] undoMoveNumber = new int[MAX_PLIES];
+    private final int[] undoRoundNumber = new int[MAX_PLIES];
+    private final int[] undoPlayer = new int[MAX_PLIES];
+    private final GameOverState[] undoGameOver = new GameOverState[MAX_PLIES];
+    private final long[] undoHash = new long[MAX_PLIES];
+    private final int[] undoDeadLines = new int[MAX_PLIES];
+    private final byte[] undoMacroboard = new byte[MAX_PLIES * 9];
+    private int undoDepth = 0;
+
     public void setGameOver(GameOverState state) {
         gameOver = state;
     }
@@ -46,6 +63,18 @@ public class GameManager {
         return gameOver;
     }
 
+    /**
+     * A game is a dead draw when every line of the macroboard holds a microboard
+     * won by each player or a tied microboard. Neither player can win any more,
+     * so the game can only end in a tie, and playouts can stop here instead of
+     * filling the rest of the board. This is a constant time check.
+     * @return true if the game is still active but can only end in a tie
+     */
+    public boolean isDeadDraw() {
+        return gameOver == GameOverState.Active
+                && (deadLines[0] & deadLines[1]) == BoardPatterns.ALL_LINES;
+    }
+
     public void setCurrentPlayer(int player) {
         currentPlayer = player;
     }
@@ -67,6 +96,7 @@ public class GameManager {
     public GameManager(IGameState currentState) {
         this.currentState = currentState;
         mode = GameMode.HumanVsHuman;
+        initDeadLines();
     }
 
     /**
@@ -81,6 +111,7 @@ public class GameManager {
         playerGoesFirst=humanPlaysFirst;
         mode = GameMode.HumanVsBot;
         this.bot = bot;
+        initDeadLines();
     }
     
     /**
@@ -96,6 +127,7 @@ public class GameManager {
         mode = GameMode.BotVsBot;
         this.bot = bot;
         this.bot2 = bot2;
+        initDeadLines();
     }
     
     /**
@@ -114,6 +146,70 @@ public class GameManager {
         return true;
     }
     
+    /**
+     * Plays a move so that it can be taken back again with undoMove().
+     * This lets a search walk the game tree on this one position instead of
+     * copying the state at every node. To search from a position handed to a bot,
+     * create a GameManager on a copy of it and set the current player to
+     * moveNumber % 2.
+     * @param move The move to play for the current player
+     * @return Returns true if the move was played, false if it was illegal,
+     * in which case nothing is changed.
+     */
+    public boolean makeMove(IMove move)
+    {
+        if(!verifyMoveLegality(move))
+            return false;
+
+        IField field = currentState.getField();
+        int ply = undoDepth++;
+        undoCell[ply] = IField.cellIndex(move.getX(), move.getY());
+        undoMoveNumber[ply] = currentState.getMoveNumber();
+        undoRoundNumber[ply] = currentState.getRoundNumber();
+        undoPlayer[ply] = currentPlayer;
+        undoGameOver[ply] = gameOver;
+        undoHash[ply] = currentState.getHash();
+        undoDeadLines[ply] = deadLines[0] | deadLines[1] << 8;
+        for (int micro = 0; micro < 9; micro++)
+            undoMacroboard[ply * 9 + micro] = field.getMacroCell(micro);
+
+        updateBoard(move);
+        currentPlayer = (currentPlayer + 1) % 2;
+        return true;
+    }
+
+    /**
+     * Takes back the last move played with makeMove(), restoring the board,
+     * the macroboard, move and round numbers, the current player and the
+     * game over state exactly as they were.
+     */
+    public void undoMove()
+    {
+        if(undoDepth == 0)
+            throw new IllegalStateException("No move to undo");
+
+        int ply = --undoDepth;
+        IField field = currentState.getField();
+        field.setCell(undoCell[ply], IField.CELL_EMPTY);
+        for (int micro = 0; micro < 9; micro++)
+            field.setMacroCell(micro, undoMacroboard[ply * 9 + micro]);
+        currentState.setMoveNumber(undoMoveNumber[ply]);
+        currentState.setRoundNumber(undoRoundNumber[ply]);
+        currentPlayer = undoPlayer[ply];
+        gameOver = undoGameOver[ply];
+        currentState.setHash(undoHash[ply]);
+        deadLines[0] = undoDeadLines[ply] & BoardPatterns.ALL_LINES;
+        deadLines[1] = undoDeadLines[ply] >>> 8;
+    }
+
+    /**
+     * @return the number of moves played with makeMove() that can still be undone
+     */
+    public int getUndoDepth()
+    {
+        return undoDepth;
+    }
+
     /**
      * Non-User driven input, e.g. an update for playing a bot move.
      * @return Returns true if the update was successful, false otherwise.
@@ -156,134 +252,87 @@ public class GameManager {
 
     private Boolean verifyMoveLegality(IMove move)
     {
-        IField field = currentState.getField();
-        boolean isValid=field.isInActiveMicroboard(move.getX(), move.getY());
-
-        if(isValid && (move.getX() < 0 || 9 <= move.getX())) isValid = false;
-        if(isValid && (move.getY() < 0 || 9 <= move.getY())) isValid = false;
-
-        if(isValid && !field.getBoard()[move.getX()][move.getY()].equals(IField.EMPTY_FIELD))
-            isValid=false;
+        if(move.getX() < 0 || 9 <= move.getX()) return false;
+        if(move.getY() < 0 || 9 <= move.getY()) return false;
 
-        return isValid;
+        IField field = currentState.getField();
+        int index = IField.cellIndex(move.getX(), move.getY());
+        return field.getMacroCell(index / 9) == IField.CELL_AVAILABLE
+                && field.getCell(index) == IField.CELL_EMPTY;
     }
     
     private void updateBoard(IMove move)
     {
-        String[][] board = currentState.getField().getBoard();
-        board[move.getX()][move.getY()]=currentPlayer+"";
+        IField field = currentState.getField();
+        int index = IField.cellIndex(move.getX(), move.getY());
+        long hash = currentState.getHash()
+                ^ Zobrist.cell(currentPlayer, index)
+                ^ Zobrist.active(field.getActiveMicroboards())
+                ^ Zobrist.side();
+        field.setCell(index, (byte) currentPlayer);
         currentState.setMoveNumber(currentState.getMoveNumber() + 1);
         if(currentState.getMoveNumber() % 2 == 0) { currentState.setRoundNumber(currentState.getRoundNumber() + 1); }
-        checkAndUpdateIfWin(move);
-        updateMacroboard(move);
+        checkAndUpdateIfWin(index);
+        updateMacroboard(index);
+        currentState.setHash(hash ^ Zobrist.active(field.getActiveMicroboards()));
+    }
 
+    private void initDeadLines() {
+        IField field = currentState.getField();
+        int tied = BoardPatterns.macroPattern(field, IField.CELL_TIE);
+        deadLines[0] = BoardPatterns.blockedLines(tied | BoardPatterns.macroPattern(field, IField.CELL_PLAYER1));
+        deadLines[1] = BoardPatterns.blockedLines(tied | BoardPatterns.macroPattern(field, IField.CELL_PLAYER0));
     }
 
-    private void checkAndUpdateIfWin(IMove move) {
-        String[][] macroBoard = currentState.getField().getMacroboard();
-        int macroX = move.getX()/3;
-        int macroY = move.getY()/3;
+    private void checkAndUpdateIfWin(int index) {
+        IField field = currentState.getField();
+        int micro = index / 9;
+        byte macroCell = field.getMacroCell(micro);
 
-        if(macroBoard[macroX][macroY].equals(IField.EMPTY_FIELD) ||
-                macroBoard[macroX][macroY].equals(IField.AVAILABLE_FIELD) ) {
+        if(macroCell == IField.CELL_EMPTY || macroCell == IField.CELL_AVAILABLE) {
 
-            String[][] board = getCurrentState().getField().getBoard();
+            byte player = (byte) currentPlayer;
 
-            if(isWin(board,move, ""+currentPlayer))
-                macroBoard[macroX][macroY] = currentPlayer + "";
-            else if(isTie(board,move))
-                macroBoard[macroX][macroY] = "TIE";
+            if(BoardPatterns.hasLine(BoardPatterns.playerPattern(field, micro, player))) {
+                field.setMacroCell(micro, player);
+                deadLines[1 - currentPlayer] |= BoardPatterns.linesThrough(micro);
+            }
+            else if(field.getEmptyCells(micro) == 0) {
+                field.setMacroCell(micro, IField.CELL_TIE);
+                deadLines[0] |= BoardPatterns.linesThrough(micro);
+                deadLines[1] |= BoardPatterns.linesThrough(micro);
+            }
             
             //Check macro win
-            if(isWin(macroBoard,new Move(macroX,macroY), ""+currentPlayer))
+            if(BoardPatterns.hasLine(BoardPatterns.macroPattern(field, player)))
                 gameOver = GameOverState.Win;
-            else if(isTie(macroBoard,new Move(macroX,macroY)))
+            else if(field.getOpenMicroboards() == 0)
                 gameOver = GameOverState.Tie;
         }
 
     }
 
-    private boolean isTie(String[][] board, IMove move){
-        int localX = move.getX() % 3;
-        int localY = move.getY() % 3;
-        int startX = move.getX() - (localX);
-        int startY = move.getY() - (localY);
-
-        for (int i = startX; i < startX+3; i++) {
-            for (int k = startY; k < startY+3; k++) {
-                if(board[i][k].equals(IField.AVAILABLE_FIELD) ||
-                        board[i][k].equals(IField.EMPTY_FIELD) )
-                    return false;
-            }
-        }
-        return true;
-    }
-
-
+    /**
+     * Checks whether the player has three in a row in the 3x3 block containing move.
+     * Kept for compatibility, the rules engine itself looks the answer up in BoardPatterns.
+     * @param board the board to check, either the 9x9 board or the 3x3 macroboard
+     * @param move a move inside the block to check
+     * @param currentPlayer the player id to check for
+     * @return true if the block holds a line of currentPlayer
+     */
     public static boolean isWin(String[][] board, IMove move, String currentPlayer){
-        int localX = move.getX() % 3;
-        int localY = move.getY() % 3;
-        int startX = move.getX() - (localX);
-        int startY = move.getY() - (localY);
-
-        //check col
-        for (int i = startY; i < startY + 3; i++) {
-            if (!board[move.getX()][i].equals(currentPlayer))
-                break;
-            if (i == startY + 3 - 1) return true;
-        }
-
-        //check row
-        for (int i = startX; i < startX + 3; i++) {
-            if (!board[i][move.getY()].equals(currentPlayer))
-                break;
-            if (i == startX + 3 - 1) return true;
-        }
-
-        //check diagonal
-        if (localX == localY) {
-            //we're on a diagonal
-            int y = startY;
-            for (int i = startX; i < startX + 3; i++) {
-                if (!board[i][y++].equals(currentPlayer))
-                    break;
-                if (i == startX + 3 - 1) return true;
-            }
-        }
-
-        //check anti diagonal
-        if (localX + localY == 3 - 1) {
-            int less = 0;
-            for (int i = startX; i < startX + 3; i++) {
-                if (!board[i][(startY + 2)-less++].equals(currentPlayer))
-                    break;
-                if (i == startX + 3 - 1) return true;
-            }
-        }
-        return false;
+        int startX = move.getX() - move.getX() % 3;
+        int startY = move.getY() - move.getY() % 3;
+        return BoardPatterns.hasLine(BoardPatterns.playerPattern(board, startX, startY, currentPlayer));
     }
     
-    private void updateMacroboard(IMove move)
+    private void updateMacroboard(int index)
     {
-        String[][] macroBoard = currentState.getField().getMacroboard();
-        for (int i = 0; i < macroBoard.length; i++)
-            for (int k = 0; k < macroBoard[i].length; k++) {
-                if(macroBoard[i][k].equals(IField.AVAILABLE_FIELD))
-                    macroBoard[i][k] = IField.EMPTY_FIELD;
-            }
-
-        int xTrans = move.getX()%3;
-        int yTrans = move.getY()%3;
-
-        if(macroBoard[xTrans][yTrans].equals(IField.EMPTY_FIELD))
-            macroBoard[xTrans][yTrans] = IField.AVAILABLE_FIELD;
-        else {
-            // Field is already won, set all fields not won to avail.
-            for (int i = 0; i < macroBoard.length; i++)
-                for (int k = 0; k < macroBoard[i].length; k++) {
-                    if(macroBoard[i][k].equals(IField.EMPTY_FIELD))
-                        macroBoard[i][k] = IField.AVAILABLE_FIELD;
-                }
-        }
+        IField field = currentState.getField();
+        // The position within the microboard picks the next microboard.
+        // If that one is already won or tied, every open microboard becomes available.
+        int next = index % 9;
+        int open = field.getOpenMicroboards();
+        field.setActiveMicroboards((open & (1 << next)) != 0 ? 1 << next : open);
     }
 }
@@ -0,0 +1,309 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.BitboardField;
+import dk.easv.bll.field.BoardPatterns;
+import dk.easv.bll.field.IField;
+import dk.easv.bll.move.IMove;
+
+import java.util.SplittableRandom;
+
+/**
+ * A fast, reusable copy of the game rules for bots that simulate games.
+ *
+ * The simulator plays on its own BitboardField and follows the same rules as
+ * GameManager, including the position hash and dead draw detection, without
+ * Strings, move objects or undo records. One simulator is meant to be created
+ * per thread and reused: load() copies a position into it, reset() goes back to
+ * the last loaded position, and playout() finishes the game with random moves.
+ * None of these allocate, so a bot can run millions of playouts without garbage.
+ *
+ * A simulator is not thread safe.
+ */
+public final class GameSimulator {
+
+    private final BitboardField field = new BitboardField();
+    private final BitboardField start = new BitboardField();
+    private final int[] moves = new int[81];
+    private final int[] deadLines = new int[2];
+
+    private int currentPlayer;
+    private int moveNumber;
+    private int roundNumber;
+    private long hash;
+    private GameManager.GameOverState gameOver = GameManager.GameOverState.Active;
+    private int winner = -1;
+
+    private int startMoveNumber;
+    private int startRoundNumber;
+    private long startHash;
+
+    private long playouts;
+
+    /**
+     * Creates a simulator holding an empty board with player 0 to move.
+     */
+    public GameSimulator() {
+        startHash = Zobrist.hash(start, 0);
+        reset();
+    }
+
+    /**
+     * Creates a simulator holding the position of a game state.
+     * @param state the position to load
+     */
+    public GameSimulator(IGameState state) {
+        load(state);
+    }
+
+    /**
+     * Loads the position of a game state, with player moveNumber % 2 to move.
+     * The state is only read, and is not kept. Copying is a handful of word
+     * writes when the state is backed by a BitboardField, and one pass over the
+     * 81 cell codes otherwise.
+     * @param state the position to load
+     */
+    public void load(IGameState state) {
+        IField source = state.getField();
+        if (source instanceof BitboardField) {
+            start.copyFrom((BitboardField) source);
+        } else {
+            start.clearBoard();
+            for (int index = 0; index < 81; index++) {
+                byte cell = source.getCell(index);
+                if (cell == IField.CELL_PLAYER0 || cell == IField.CELL_PLAYER1)
+                    start.place(index, cell);
+            }
+            for (int micro = 0; micro < 9; micro++) {
+                byte macroCell = source.getMacroCell(micro);
+                if (macroCell == IField.CELL_PLAYER0 || macroCell == IField.CELL_PLAYER1)
+                    start.setMicroboardWinner(micro, macroCell);
+                else if (macroCell == IField.CELL_TIE)
+                    start.setMicroboardTied(micro);
+            }
+            start.setActiveMicroboards(source.getActiveMicroboards());
+        }
+        startMoveNumber = state.getMoveNumber();
+        startRoundNumber = state.getRoundNumber();
+        startHash = state.getHash();
+        reset();
+    }
+
+    /**
+     * Loads the current position of another simulator.
+     * @param other the simulator to copy
+     */
+    public void load(GameSimulator other) {
+        start.copyFrom(other.field);
+        startMoveNumber = other.moveNumber;
+        startRoundNumber = other.roundNumber;
+        startHash = other.hash;
+        reset();
+    }
+
+    /**
+     * Returns to the position of the last load(), so another game can be
+     * simulated from it.
+     */
+    public void reset() {
+        field.copyFrom(start);
+        moveNumber = startMoveNumber;
+        roundNumber = startRoundNumber;
+        hash = startHash;
+        currentPlayer = moveNumber % 2;
+
+        int won0 = field.getWonMicroboards(0);
+        int won1 = field.getWonMicroboards(1);
+        int tied = field.getTiedMicroboards();
+        deadLines[0] = BoardPatterns.blockedLines(tied | won1);
+        deadLines[1] = BoardPatterns.blockedLines(tied | won0);
+        winner = -1;
+        if (BoardPatterns.hasLine(won0))
+            winner = 0;
+        else if (BoardPatterns.hasLine(won1))
+            winner = 1;
+        if (winner >= 0)
+            gameOver = GameManager.GameOverState.Win;
+        else if (field.getOpenMicroboards() == 0)
+            gameOver = GameManager.GameOverState.Tie;
+        else
+            gameOver = GameManager.GameOverState.Active;
+    }
+
+    /**
+     * Plays a move for the current player.
+     * @param index packed cell index of the move
+     * @return true if the move was played, false if it was illegal or the game is over
+     */
+    public boolean play(int index) {
+        if (gameOver != GameManager.GameOverState.Active || index < 0 || 81 <= index)
+            return false;
+        if ((field.getActiveMicroboards() & (1 << (index / 9))) == 0 || field.getOwner(index) >= 0)
+            return false;
+        apply(index);
+        return true;
+    }
+
+    /**
+     * Plays a move for the current player.
+     * @param move the move to play
+     * @return true if the move was played, false if it was illegal or the game is over
+     */
+    public boolean play(IMove move) {
+        if (move.getX() < 0 || 9 <= move.getX() || move.getY() < 0 || 9 <= move.getY())
+            return false;
+        return play(IField.cellIndex(move.getX(), move.getY()));
+    }
+
+    /**
+     * Plays random moves until the game is won, tied or a dead draw.
+     * @param random source of the moves
+     * @return the winning player, or -1 for a tie
+     */
+    public int playout(SplittableRandom random) {
+        while (gameOver == GameManager.GameOverState.Active && !isDeadDraw()) {
+            int count = field.getAvailableMoves(moves);
+            apply(moves[random.nextInt(count)]);
+        }
+        playouts++;
+        return winner;
+    }
+
+    /**
+     * Plays moves chosen by a HeavyPlayoutPolicy until the game is won, tied or a
+     * dead draw. Slower per game than playout(SplittableRandom), but the results
+     * are closer to how real players finish the game.
+     * @param random source of the random choices
+     * @param policy the policy to choose the moves
+     * @return the winning player, or -1 for a tie
+     */
+    public int playout(SplittableRandom random, HeavyPlayoutPolicy policy) {
+        policy.reset(field);
+        while (gameOver == GameManager.GameOverState.Active && !isDeadDraw()) {
+            int player = currentPlayer;
+            int index = policy.chooseMove(field, player, random);
+            apply(index);
+            policy.update(field, index, player);
+        }
+        playouts++;
+        return winner;
+    }
+
+    // Plays a move already known to be legal, mirroring GameManager.updateBoard()
+    private void apply(int index) {
+        int micro = index / 9;
+        int player = currentPlayer;
+        hash ^= Zobrist.cell(player, index) ^ Zobrist.active(field.getActiveMicroboards()) ^ Zobrist.side();
+        field.place(index, player);
+        moveNumber++;
+        if (moveNumber % 2 == 0)
+            roundNumber++;
+
+        int stones = field.getMicroboard(player, micro);
+        if (BoardPatterns.hasLine(stones)) {
+            field.setMicroboardWinner(micro, player);
+            deadLines[1 - player] |= BoardPatterns.linesThrough(micro);
+            if (BoardPatterns.hasLine(field.getWonMicroboards(player))) {
+                gameOver = GameManager.GameOverState.Win;
+                winner = player;
+            }
+        } else if (BoardPatterns.isFull(stones | field.getMicroboard(1 - player, micro))) {
+            field.setMicroboardTied(micro);
+            deadLines[0] |= BoardPatterns.linesThrough(micro);
+            deadLines[1] |= BoardPatterns.linesThrough(micro);
+        }
+        int open = field.getOpenMicroboards();
+        if (gameOver == GameManager.GameOverState.Active && open == 0)
+            gameOver = GameManager.GameOverState.Tie;
+
+        // The position within the microboard picks the next microboard
+        int next = index % 9;
+        field.setActiveMicroboards((open & (1 << next)) != 0 ? 1 << next : open);
+        hash ^= Zobrist.active(field.getActiveMicroboards());
+        currentPlayer = 1 - player;
+    }
+
+    /**
+     * @param moves buffer of at least 81 entries, filled with packed cell indexes
+     * @return the number of legal moves, 0 once the game is over
+     */
+    public int getAvailableMoves(int[] moves) {
+        if (gameOver != GameManager.GameOverState.Active)
+            return 0;
+        return field.getAvailableMoves(moves);
+    }
+
+    /**
+     * @return true if the game is still active but can only end in a tie,
+     * see GameManager.isDeadDraw()
+     */
+    public boolean isDeadDraw() {
+        return gameOver == GameManager.GameOverState.Active
+                && (deadLines[0] & deadLines[1]) == BoardPatterns.ALL_LINES;
+    }
+
+    public GameManager.GameOverState getGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * @return the player who won, or -1 if nobody has won (yet)
+     */
+    public int getWinner() {
+        return winner;
+    }
+
+    public int getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    public int getMoveNumber() {
+        return moveNumber;
+    }
+
+    public int getRoundNumber() {
+        return roundNumber;
+    }
+
+    /**
+     * @return the Zobrist hash of the current position, as IGameState.getHash()
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * @return the field being played on. Read it, but change it only through the simulator.
+     */
+    public BitboardField getField() {
+        return field;
+    }
+
+    /**
+     * @return the number of playouts this simulator has finished
+     */
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    /**
+     * Runs random playouts from a position on one thread for a given time.
+     * @param state the position to play out
+     * @param millis how long to run
+     * @return the number of playouts per second
+     */
+    public static double benchmark(IGameState state, long millis) {
+        GameSimulator simulator = new GameSimulator(state);
+        SplittableRandom random = new SplittableRandom();
+        long start = System.nanoTime();
+        long end = start + millis * 1_000_000L;
+        long now;
+        do {
+            for (int i = 0; i < 256; i++) {
+                simulator.reset();
+                simulator.playout(random);
+            }
+            now = System.nanoTime();
+        } while (now < end);
+        return simulator.getPlayouts() * 1e9 / (now - start);
+    }
+}
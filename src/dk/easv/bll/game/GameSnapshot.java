@@ -0,0 +1,178 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.IField;
+
+/**
+ * An immutable, packed copy of a game position in three longs.
+ *
+ * Each microboard is stored as a base 3 number of its nine cells (empty, player 0,
+ * player 1), which takes 15 bits. Microboards 0-3 go in the first long and 4-7 in
+ * the second. The third long holds microboard 8, two bits of macroboard state per
+ * microboard (open, won by 0, won by 1, tied), the 9 bit mask of active microboards
+ * and the move and round numbers.
+ *
+ * Microboards are numbered (x/3)*3 + y/3 and cells within them (x%3)*3 + y%3,
+ * matching the packed cell index of IField. The time per move is a setting of the
+ * game rather than part of the position, so it is not stored.
+ */
+public final class GameSnapshot {
+
+    private static final int BOARD_BITS = 15;
+    private static final long BOARD_MASK = (1L << BOARD_BITS) - 1;
+    private static final int MACRO_SHIFT = 15;
+    private static final int ACTIVE_SHIFT = 33;
+    private static final int MOVE_SHIFT = 42;
+    private static final int ROUND_SHIFT = 53;
+    private static final int COUNTER_MASK = (1 << 11) - 1;
+
+    private static final int MACRO_OPEN = 0;
+    private static final int MACRO_TIE = 3;
+
+    // TRITS[p] is the base 3 value of a 9 bit pattern with digit 1 on every set bit.
+    private static final int[] TRITS = new int[512];
+    // DECODE[code] is the pattern of player 0 in the low 9 bits and of player 1 above it.
+    private static final int[] DECODE = new int[19683];
+
+    static {
+        for (int pattern = 0; pattern < 512; pattern++) {
+            int value = 0;
+            for (int i = 8; i >= 0; i--)
+                value = value * 3 + ((pattern >> i) & 1);
+            TRITS[pattern] = value;
+        }
+        for (int code = 0; code < DECODE.length; code++) {
+            int rest = code;
+            int decoded = 0;
+            for (int i = 0; i < 9; i++) {
+                int digit = rest % 3;
+                rest /= 3;
+                if (digit == 1) decoded |= 1 << i;
+                else if (digit == 2) decoded |= 1 << (i + 9);
+            }
+            DECODE[code] = decoded;
+        }
+    }
+
+    private final long low;
+    private final long middle;
+    private final long rest;
+
+    private GameSnapshot(long low, long middle, long rest) {
+        this.low = low;
+        this.middle = middle;
+        this.rest = rest;
+    }
+
+    /**
+     * Packs the position of a game state.
+     * @param state the state to copy
+     * @return the snapshot
+     */
+    public static GameSnapshot of(IGameState state) {
+        if (state.getMoveNumber() < 0 || state.getMoveNumber() > COUNTER_MASK
+                || state.getRoundNumber() < 0 || state.getRoundNumber() > COUNTER_MASK)
+            throw new IllegalArgumentException("Move or round number out of range for a snapshot");
+
+        IField field = state.getField();
+        long low = 0L, middle = 0L, rest = 0L;
+        int active = 0;
+        for (int micro = 0; micro < 9; micro++) {
+            int player0 = 0;
+            int player1 = 0;
+            for (int local = 0; local < 9; local++) {
+                byte cell = field.getCell(micro * 9 + local);
+                if (cell == IField.CELL_PLAYER0) player0 |= 1 << local;
+                else if (cell == IField.CELL_PLAYER1) player1 |= 1 << local;
+            }
+            long code = (TRITS[player0] + 2L * TRITS[player1]) << ((micro % 4) * BOARD_BITS);
+            if (micro < 4) low |= code;
+            else if (micro < 8) middle |= code;
+            else rest |= code;
+
+            byte macroCell = field.getMacroCell(micro);
+            long macro = MACRO_OPEN;
+            if (macroCell == IField.CELL_PLAYER0) macro = 1;
+            else if (macroCell == IField.CELL_PLAYER1) macro = 2;
+            else if (macroCell == IField.CELL_TIE) macro = MACRO_TIE;
+            else if (macroCell == IField.CELL_AVAILABLE) active |= 1 << micro;
+            rest |= macro << (MACRO_SHIFT + micro * 2);
+        }
+        rest |= (long) active << ACTIVE_SHIFT;
+        rest |= (long) state.getMoveNumber() << MOVE_SHIFT;
+        rest |= (long) state.getRoundNumber() << ROUND_SHIFT;
+        return new GameSnapshot(low, middle, rest);
+    }
+
+    /**
+     * Writes this position into a game state, replacing its board, macroboard,
+     * move number and round number. The position hash is recomputed with
+     * player moveNumber % 2 to move.
+     * @param state the state to overwrite
+     */
+    public void restore(IGameState state) {
+        IField field = state.getField();
+        int active = getActiveMicroboards();
+        for (int micro = 0; micro < 9; micro++) {
+            int cells = DECODE[getMicroboardCode(micro)];
+            for (int local = 0; local < 9; local++) {
+                byte cell = IField.CELL_EMPTY;
+                if ((cells & (1 << local)) != 0) cell = IField.CELL_PLAYER0;
+                else if ((cells & (1 << (local + 9))) != 0) cell = IField.CELL_PLAYER1;
+                field.setCell(micro * 9 + local, cell);
+            }
+
+            int macro = (int) (rest >>> (MACRO_SHIFT + micro * 2)) & 3;
+            byte macroCell;
+            if (macro == 1) macroCell = IField.CELL_PLAYER0;
+            else if (macro == 2) macroCell = IField.CELL_PLAYER1;
+            else if (macro == MACRO_TIE) macroCell = IField.CELL_TIE;
+            else if ((active & (1 << micro)) != 0) macroCell = IField.CELL_AVAILABLE;
+            else macroCell = IField.CELL_EMPTY;
+            field.setMacroCell(micro, macroCell);
+        }
+
+        state.setMoveNumber(getMoveNumber());
+        state.setRoundNumber(getRoundNumber());
+        state.setHash(Zobrist.hash(field, getMoveNumber() % 2));
+    }
+
+    /**
+     * @param micro microboard number, 0-8
+     * @return the base 3 code of the microboard's cells
+     */
+    private int getMicroboardCode(int micro) {
+        long word = micro < 4 ? low : micro < 8 ? middle : rest;
+        return (int) ((word >>> ((micro % 4) * BOARD_BITS)) & BOARD_MASK);
+    }
+
+    /**
+     * @return 9 bit mask of the microboards available for the next move
+     */
+    public int getActiveMicroboards() {
+        return (int) (rest >>> ACTIVE_SHIFT) & 0x1FF;
+    }
+
+    public int getMoveNumber() {
+        return (int) (rest >>> MOVE_SHIFT) & COUNTER_MASK;
+    }
+
+    public int getRoundNumber() {
+        return (int) (rest >>> ROUND_SHIFT) & COUNTER_MASK;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GameSnapshot snapshot = (GameSnapshot) o;
+        return low == snapshot.low && middle == snapshot.middle && rest == snapshot.rest;
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = low * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ middle) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ rest) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -8,11 +8,13 @@ public class GameState implements IGameState{
     int moveNumber;
     int roundNumber;
     int timePerMove = 1000; //1000ms default value, can be changes depending on game specifics.
+    long hash;
 
     public GameState(){
         field = new Field();
         moveNumber=0;
         roundNumber=0;
+        hash = Zobrist.hash(field, 0);
     }
 
     public GameState(IGameState state) {
@@ -22,6 +24,28 @@ public class GameState implements IGameState{
 
         moveNumber = state.getMoveNumber();
         roundNumber = state.getRoundNumber();
+        timePerMove = state.getTimePerMove();
+        hash = state.getHash();
+    }
+
+    public GameState(GameSnapshot snapshot) {
+        field = new Field();
+        snapshot.restore(this);
+    }
+
+    /**
+     * @return a packed, immutable copy of the current position
+     */
+    public GameSnapshot snapshot() {
+        return GameSnapshot.of(this);
+    }
+
+    /**
+     * Sets this state back to a position taken with snapshot().
+     * @param snapshot the position to restore
+     */
+    public void restore(GameSnapshot snapshot) {
+        snapshot.restore(this);
     }
 
     @Override
@@ -49,6 +73,16 @@ public class GameState implements IGameState{
         this.roundNumber = roundNumber;
     }
 
+    @Override
+    public long getHash() {
+        return hash;
+    }
+
+    @Override
+    public void setHash(long hash) {
+        this.hash = hash;
+    }
+
     @Override
     public int getTimePerMove()
     {
@@ -18,4 +18,13 @@ public interface IGameState {
 
     int getTimePerMove();
     void setTimePerMove(int milliSeconds);
+
+    /**
+     * A 64 bit Zobrist hash of the position: cell ownership, active microboards
+     * and side to move. GameManager keeps it up to date on every move; code that
+     * edits the board directly must recompute it with Zobrist.hash().
+     * @return the position hash
+     */
+    long getHash();
+    void setHash(long hash);
 }
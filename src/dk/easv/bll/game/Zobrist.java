@@ -0,0 +1,81 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.IField;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist keys for 64 bit position hashes.
+ *
+ * A position hash is the XOR of one key per occupied cell and player, one key per
+ * active microboard and a side key when player 1 is to move. Won and tied
+ * microboards follow from the cells, so they need no keys of their own. The keys
+ * come from a fixed seed, so a position hashes to the same value in every run.
+ */
+public final class Zobrist {
+
+    private static final long[][] CELLS = new long[2][81];
+    private static final long[] ACTIVE = new long[512];
+    private static final long SIDE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EED_0F_0777L);
+        for (int player = 0; player < 2; player++)
+            for (int index = 0; index < 81; index++)
+                CELLS[player][index] = random.nextLong();
+        long[] micro = new long[9];
+        for (int i = 0; i < 9; i++)
+            micro[i] = random.nextLong();
+        for (int mask = 1; mask < 512; mask++) {
+            int lowest = Integer.numberOfTrailingZeros(mask);
+            ACTIVE[mask] = ACTIVE[mask & (mask - 1)] ^ micro[lowest];
+        }
+        SIDE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * @param player 0 or 1
+     * @param index packed cell index
+     * @return the key for player owning the cell
+     */
+    public static long cell(int player, int index) {
+        return CELLS[player][index];
+    }
+
+    /**
+     * @param mask 9 bit mask of active microboards
+     * @return the combined key of all microboards in the mask
+     */
+    public static long active(int mask) {
+        return ACTIVE[mask];
+    }
+
+    /**
+     * @return the key toggled whenever the side to move changes
+     */
+    public static long side() {
+        return SIDE;
+    }
+
+    /**
+     * Computes a position hash from scratch.
+     * @param field the position
+     * @param playerToMove the player whose turn it is
+     * @return the hash GameManager would have built up move by move
+     */
+    public static long hash(IField field, int playerToMove) {
+        long hash = 0L;
+        for (int index = 0; index < 81; index++) {
+            byte cell = field.getCell(index);
+            if (cell == IField.CELL_PLAYER0 || cell == IField.CELL_PLAYER1)
+                hash ^= CELLS[cell][index];
+        }
+        hash ^= ACTIVE[field.getActiveMicroboards()];
+        if (playerToMove == 1)
+            hash ^= SIDE;
+        return hash;
+    }
+}
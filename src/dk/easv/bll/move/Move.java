@@ -1,22 +1,58 @@
 package dk.easv.bll.move;
 
-import java.util.Objects;
+import dk.easv.bll.field.IField;
 
-public class Move implements IMove{
-    int x=0;
-    int y=0;
+/**
+ * An immutable move. Move.of() hands out one shared instance per cell, so generating
+ * moves does not allocate. Moves made with the constructor are not shared, so compare
+ * moves with equals(). The index() of a move is its packed cell index (see
+ * IField.cellIndex), which lets move sets and move tables be plain arrays of 81 entries.
+ */
+public final class Move implements IMove{
+    private static final Move[] MOVES = new Move[81];
 
+    static {
+        for (int i = 0; i < MOVES.length; i++) {
+            MOVES[i] = new Move(IField.cellX(i), IField.cellY(i));
+        }
+    }
+
+    private final int x;
+    private final int y;
+
+    /**
+     * Creates a new, non-shared move. Prefer {@link #of(int, int)}.
+     */
     public Move(int x, int y) {
         this.x=x;
         this.y=y;
     }
 
-    public void setY(int y){
-        this.y=y;
+    /**
+     * @param x Column, 0-8
+     * @param y Row, 0-8
+     * @return the shared move for the cell
+     */
+    public static Move of(int x, int y) {
+        if (x < 0 || 9 <= x || y < 0 || 9 <= y)
+            throw new IllegalArgumentException("Move outside the board: (" + x + "," + y + ")");
+        return MOVES[IField.cellIndex(x, y)];
     }
 
-    public void setX(int x){
-        this.x=x;
+    /**
+     * @param index packed cell index, 0-80
+     * @return the shared move for the cell
+     */
+    public static Move of(int index) {
+        return MOVES[index];
+    }
+
+    /**
+     * @param move any move
+     * @return the shared move for the same cell
+     */
+    public static Move of(IMove move) {
+        return of(move.getX(), move.getY());
     }
 
     @Override
@@ -29,6 +65,13 @@ public class Move implements IMove{
         return y;
     }
 
+    /**
+     * @return the packed cell index of the move, 0-80
+     */
+    public int index() {
+        return IField.cellIndex(x, y);
+    }
+
     @Override
     public String toString() {
         return "("+x+","+y+")";
@@ -44,6 +87,6 @@ public class Move implements IMove{
 
     @Override
     public int hashCode() {
-        return Objects.hash(x, y);
+        return x * 9 + y;
     }
 }
@@ -0,0 +1,178 @@
+package dk.easv.bll.tournament;
+
+import dk.easv.bll.bot.IBot;
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameState;
+
+import java.util.concurrent.Semaphore;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The result of one game between the two bots of a match, seen from the first bot.
+ */
+public final class GameOutcome {
+
+    private final boolean firstBotStarted;
+    private final int winner;
+    private final boolean forfeit;
+    private final int[] moves;
+    private final long[] thinkNanos;
+    private final int[] lateMoves;
+
+    private GameOutcome(boolean firstBotStarted, int winner, boolean forfeit, int[] moves, long[] thinkNanos, int[] lateMoves) {
+        this.firstBotStarted = firstBotStarted;
+        this.winner = winner;
+        this.forfeit = forfeit;
+        this.moves = moves;
+        this.thinkNanos = thinkNanos;
+        this.lateMoves = lateMoves;
+    }
+
+    /**
+     * Plays a game to the end. A bot that makes an illegal move, or throws an
+     * exception, a StackOverflowError or a LinkageError, loses. Other Errors, like
+     * an OutOfMemoryError, are thrown on, since the JVM may not recover from them. A
+     * dead draw (see GameManager.isDeadDraw()) is stopped and counted as a tie.
+     * @param first the first bot of the match
+     * @param second the second bot of the match
+     * @param firstBotStarts true if the first bot is player 0
+     * @param timePerMove milliseconds per move, as IGameState.getTimePerMove()
+     * @param cancelled checked before every move
+     * @return the outcome, or null if the game was cancelled
+     */
+    public static GameOutcome play(IBot first, IBot second, boolean firstBotStarts, int timePerMove, BooleanSupplier cancelled) {
+        return play(first, second, firstBotStarts, timePerMove, cancelled, null);
+    }
+
+    /**
+     * Plays a game to the end, like play() above, where each move of a bot that is
+     * not a RemoteBot first takes a permit from localMoves. When all games share the
+     * permits, the local bots of all of them only use as many cores as there are
+     * permits, however many games wait for a remote bot. The wait for a permit is not
+     * counted as thinking time.
+     * @param localMoves permits for moves of local bots, or null to not limit them
+     * @return the outcome, or null if the game was cancelled or interrupted
+     */
+    public static GameOutcome play(IBot first, IBot second, boolean firstBotStarts, int timePerMove,
+                                   BooleanSupplier cancelled, Semaphore localMoves) {
+        boolean[] limited = new boolean[2]; // by player
+        if (localMoves != null) {
+            limited[0] = !Match.isRemote((firstBotStarts ? first : second).getClass());
+            limited[1] = !Match.isRemote((firstBotStarts ? second : first).getClass());
+        }
+        GameState state = new GameState();
+        state.setTimePerMove(timePerMove);
+        GameManager game = firstBotStarts ? new GameManager(state, first, second) : new GameManager(state, second, first);
+        long lateNanos = timePerMove * 1_000_000L;
+        int[] moves = new int[2];
+        long[] nanos = new long[2];
+        int[] late = new int[2];
+        int loser = -1; // the player who forfeited
+
+        while (game.getGameOver() == GameManager.GameOverState.Active && !game.isDeadDraw()) {
+            if (cancelled.getAsBoolean())
+                return null;
+            int player = game.getCurrentPlayer();
+            if (limited[player]) {
+                try {
+                    localMoves.acquire();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            long start = System.nanoTime();
+            boolean legal;
+            try {
+                legal = game.updateGame();
+            } catch (Exception | StackOverflowError | LinkageError ex) {
+                // Bugs in the bot, like a search that recurses too deep or a class it can't
+                // load, lose the game. Errors of the JVM itself, like running out of memory,
+                // go on to the caller, which ends the run.
+                legal = false;
+            } finally {
+                if (limited[player])
+                    localMoves.release();
+            }
+            long time = System.nanoTime() - start;
+            moves[player]++;
+            nanos[player] += time;
+            if (time > lateNanos)
+                late[player]++;
+            if (!legal) {
+                loser = player;
+                break;
+            }
+        }
+
+        int winnerPlayer;
+        if (loser >= 0)
+            winnerPlayer = 1 - loser;
+        else if (game.getGameOver() == GameManager.GameOverState.Win)
+            winnerPlayer = 1 - game.getCurrentPlayer(); // the player who made the last move
+        else
+            winnerPlayer = -1;
+
+        // From here on index 0 is the first bot and 1 the second
+        int firstPlayer = firstBotStarts ? 0 : 1;
+        int winner = winnerPlayer < 0 ? -1 : winnerPlayer == firstPlayer ? 0 : 1;
+        return new GameOutcome(firstBotStarts, winner, loser >= 0,
+                new int[]{moves[firstPlayer], moves[1 - firstPlayer]},
+                new long[]{nanos[firstPlayer], nanos[1 - firstPlayer]},
+                new int[]{late[firstPlayer], late[1 - firstPlayer]});
+    }
+
+    /**
+     * @return true if the first bot was player 0
+     */
+    public boolean isFirstBotStarted() {
+        return firstBotStarted;
+    }
+
+    /**
+     * @return 0 if the first bot won, 1 if the second bot won, -1 for a tie
+     */
+    public int getWinner() {
+        return winner;
+    }
+
+    /**
+     * @return the player number (0 or 1) of the winner, -1 for a tie
+     */
+    public int getWinnerPlayer() {
+        if (winner < 0)
+            return -1;
+        return (winner == 0) == firstBotStarted ? 0 : 1;
+    }
+
+    /**
+     * @return true if the loser made an illegal move or failed
+     */
+    public boolean isForfeit() {
+        return forfeit;
+    }
+
+    /**
+     * @param bot 0 for the first bot, 1 for the second
+     * @return the moves the bot made
+     */
+    public int getMoves(int bot) {
+        return moves[bot];
+    }
+
+    /**
+     * @param bot 0 for the first bot, 1 for the second
+     * @return the time the bot spent on its moves, in nanoseconds
+     */
+    public long getThinkNanos(int bot) {
+        return thinkNanos[bot];
+    }
+
+    /**
+     * @param bot 0 for the first bot, 1 for the second
+     * @return the bot's moves that took longer than the time per move
+     */
+    public int getLateMoves(int bot) {
+        return lateMoves[bot];
+    }
+}
@@ -0,0 +1,318 @@
+package dk.easv.bll.tournament;
+
+import dk.easv.bll.bot.IBot;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Plays games between bots on a work-stealing pool.
+ *
+ * Every game is a task of its own, so a worker that finishes its games early
+ * takes games queued for the others, and all workers stay busy until the last
+ * games of a run even when some bots are much slower than others. The games of
+ * a match alternate which bot is player 0, and the games of all matches are
+ * interleaved, so every worker plays a mix of both colours and all pairings.
+ *
+ * Bot instances are reused from game to game for the whole run, like a bot in the
+ * GUI is reused for a whole simulation, but never play two games at the same time.
+ *
+ * Games with a RemoteBot (see Match.isRemote()) spend most of their time waiting
+ * for the other machine, so they are not played on the pool, where each would hold
+ * a worker and a core. They run on threads of their own instead, up to a set
+ * number of remote games at a time: virtual threads when the JVM has them (Java 21
+ * and later), otherwise a fixed pool of plain threads. The limit also bounds the
+ * bot instances and the requests to the server. Every move of a local bot, in a
+ * game on the pool or in a remote game, takes one of as many permits as the pool
+ * has workers, so many remote games can be in flight while the local bots together
+ * never use more cores than that.
+ *
+ * A run can be paused, which lets the games being played finish and starts no new
+ * ones until it is resumed, and cancelled, which also stops the games being played
+ * before their next move. Cancelled games are not reported.
+ *
+ * Every completed game is counted in the run's GameStatistics before the listener
+ * hears of it, so a snapshot taken by the listener includes the game.
+ */
+public class GameScheduler {
+
+    /**
+     * Receives the outcome of every game, on the worker thread that played it, so
+     * implementations must be thread safe.
+     */
+    public interface Listener {
+        /**
+         * @param run the run the game belongs to
+         * @param match index of the match in the list given to start()
+         * @param outcome how the game ended
+         * @param completed games completed so far in the run, including this one
+         * @param total games in the run
+         */
+        void gameFinished(Run run, int match, GameOutcome outcome, int completed, int total);
+    }
+
+    /**
+     * Remote games played at the same time when nothing else is asked for.
+     */
+    public static final int DEFAULT_REMOTE_GAMES = 64;
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+    private final ExecutorService remotePool;
+    private final Semaphore remoteGames;
+    private final Semaphore localMoves;
+
+    /**
+     * @param parallelism number of games to play at the same time
+     */
+    public GameScheduler(int parallelism) {
+        this(parallelism, DEFAULT_REMOTE_GAMES);
+    }
+
+    /**
+     * @param parallelism number of games without a RemoteBot to play at the same time,
+     * and of moves of local bots in all games
+     * @param remoteGames number of games with a RemoteBot to play at the same time
+     */
+    public GameScheduler(int parallelism, int remoteGames) {
+        if (parallelism < 1 || remoteGames < 1)
+            throw new IllegalArgumentException("Need at least one worker, was " + parallelism + " and " + remoteGames);
+        this.parallelism = parallelism;
+        // asyncMode: queued games are taken oldest first, in the order they were submitted
+        pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        remotePool = newRemoteExecutor(remoteGames);
+        this.remoteGames = new Semaphore(remoteGames);
+        localMoves = new Semaphore(parallelism);
+    }
+
+    // Virtual threads if the JVM has them, looked up by reflection so this still runs on Java 17
+    private static ExecutorService newRemoteExecutor(int threads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // Not there, or a preview feature that is not enabled
+            return Executors.newFixedThreadPool(threads, task -> {
+                Thread thread = new Thread(task, "remote-game");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Starts playing the games of some matches. Returns at once.
+     * @param matches the pairs of bots to play
+     * @param gamesPerMatch games to play in each match, alternating the colours
+     * @param timePerMove milliseconds per move, as IGameState.getTimePerMove()
+     * @param listener receives each finished game
+     * @return the run, to follow, pause or cancel it
+     */
+    public Run start(List<Match> matches, int gamesPerMatch, int timePerMove, Listener listener) {
+        Run run = new Run(matches, gamesPerMatch * matches.size(), timePerMove, listener,
+                new GameStatistics(matches.size(), parallelism));
+        for (int game = 0; game < gamesPerMatch; game++) {
+            for (int match = 0; match < matches.size(); match++) {
+                int matchIndex = match;
+                boolean firstBotStarts = game % 2 == 0;
+                if (matches.get(match).isRemote())
+                    remotePool.execute(() -> playRemoteGame(run, matchIndex, firstBotStarts));
+                else
+                    pool.execute(() -> run.playGame(matchIndex, firstBotStarts, localMoves));
+            }
+        }
+        return run;
+    }
+
+    // Virtual threads are not limited by the executor, so the games wait for a permit here
+    private void playRemoteGame(Run run, int match, boolean firstBotStarts) {
+        remoteGames.acquireUninterruptibly();
+        try {
+            run.playGame(match, firstBotStarts, localMoves);
+        } finally {
+            remoteGames.release();
+        }
+    }
+
+    /**
+     * Cancels nothing, but lets the workers end once the queued games are done.
+     */
+    public void shutdown() {
+        pool.shutdown();
+        remotePool.shutdown();
+    }
+
+    /**
+     * The games started by one call of start().
+     */
+    public static final class Run {
+
+        private final List<Match> matches;
+        private final int total;
+        private final int timePerMove;
+        private final Listener listener;
+        private final GameStatistics statistics;
+
+        private final AtomicInteger completed = new AtomicInteger();
+        private final CountDownLatch done;
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private final Object pauseLock = new Object();
+        private volatile boolean paused;
+        private volatile boolean cancelled;
+
+        // Bots not playing a game right now, ready for the next one
+        private final Map<Class<? extends IBot>, Queue<IBot>> idleBots = new ConcurrentHashMap<>();
+
+        private Run(List<Match> matches, int total, int timePerMove, Listener listener, GameStatistics statistics) {
+            this.matches = matches;
+            this.total = total;
+            this.timePerMove = timePerMove;
+            this.listener = listener;
+            this.statistics = statistics;
+            done = new CountDownLatch(total);
+        }
+
+        private void playGame(int match, boolean firstBotStarts, Semaphore localMoves) {
+            try {
+                awaitResume();
+                if (cancelled)
+                    return;
+                Match pair = matches.get(match);
+                IBot first = borrowBot(pair.getFirstBot());
+                IBot second = borrowBot(pair.getSecondBot());
+                GameOutcome outcome = GameOutcome.play(first, second, firstBotStarts, timePerMove, () -> cancelled, localMoves);
+                returnBot(first);
+                returnBot(second);
+                if (outcome != null) {
+                    statistics.add(match, outcome);
+                    listener.gameFinished(this, match, outcome, completed.incrementAndGet(), total);
+                }
+            } catch (InvocationTargetException ex) {
+                // A bot constructor that failed ends the run
+                error.compareAndSet(null, ex.getCause());
+                cancel();
+            } catch (Throwable ex) {
+                // A bot that can't be created, a failing listener or an Error like OutOfMemoryError ends the run
+                error.compareAndSet(null, ex);
+                cancel();
+            } finally {
+                done.countDown();
+            }
+        }
+
+        // An idle instance of a bot, or a new one. A bot playing itself gets two instances.
+        private IBot borrowBot(Class<? extends IBot> botClass) throws ReflectiveOperationException {
+            IBot bot = idleBots.computeIfAbsent(botClass, c -> new ConcurrentLinkedQueue<>()).poll();
+            return bot != null ? bot : botClass.getDeclaredConstructor().newInstance();
+        }
+
+        private void returnBot(IBot bot) {
+            idleBots.get(bot.getClass()).offer(bot);
+        }
+
+        private void awaitResume() {
+            synchronized (pauseLock) {
+                while (paused && !cancelled) {
+                    try {
+                        pauseLock.wait();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Lets the games being played finish, and starts no new games until resume().
+         */
+        public void pause() {
+            paused = true;
+        }
+
+        public void resume() {
+            synchronized (pauseLock) {
+                paused = false;
+                pauseLock.notifyAll();
+            }
+        }
+
+        /**
+         * Stops the run: no new games are started, and games being played stop
+         * before their next move.
+         */
+        public void cancel() {
+            synchronized (pauseLock) {
+                cancelled = true;
+                pauseLock.notifyAll();
+            }
+        }
+
+        public boolean isPaused() {
+            return paused;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return true once every game has been played or skipped
+         */
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        /**
+         * Waits until every game has been played or skipped.
+         * @throws IllegalStateException if a game could not be played
+         */
+        public void await() throws InterruptedException {
+            done.await();
+            Throwable failure = error.get();
+            if (failure != null)
+                throw new IllegalStateException("A game could not be played", failure);
+        }
+
+        /**
+         * @return what ended the run early, or null if nothing has gone wrong
+         */
+        public Throwable getError() {
+            return error.get();
+        }
+
+        /**
+         * Can be called at any time, also while games are being played.
+         * @return the statistics of the games completed so far
+         */
+        public GameStatistics.Snapshot getStatistics() {
+            return statistics.snapshot();
+        }
+
+        /**
+         * @return games completed so far
+         */
+        public int getCompleted() {
+            return completed.get();
+        }
+
+        /**
+         * @return games in the run
+         */
+        public int getTotal() {
+            return total;
+        }
+    }
+}
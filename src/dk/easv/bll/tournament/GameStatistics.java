@@ -0,0 +1,221 @@
+package dk.easv.bll.tournament;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Counts the outcomes of the games of a run while they are being played.
+ *
+ * The counters are split into shards, and a thread adds its games to the shard
+ * picked by its id, like a LongAdder spreads its cells, so workers almost never
+ * touch the same shard and never wait for each other. Each game is added to one
+ * shard under the shard's lock, all counters at once, and snapshot() reads every
+ * shard optimistically, only retrying a shard that was written while it was read.
+ * A snapshot therefore always holds whole games: the wins, ties, moves and
+ * thinking time of a game are either all counted or not at all, and it can be
+ * taken at any time without stopping the workers.
+ */
+public class GameStatistics {
+
+    // Counters per match. A bot is 0 for the first bot of the match and 1 for the second.
+    private static final int WINS_AS_PLAYER0 = 0;   // + bot
+    private static final int WINS_AS_PLAYER1 = 2;   // + bot
+    private static final int TIES = 4;              // + the bot that was player 0
+    private static final int FORFEITS = 6;
+    private static final int MOVES = 7;             // + bot
+    private static final int THINK_NANOS = 9;       // + bot
+    private static final int LATE_MOVES = 11;       // + bot
+    private static final int FIELDS = 13;
+
+    // Unused longs before and after the counters, so shards written by different cores don't share a cache line
+    private static final int PADDING = 8;
+
+    private static final class Shard {
+        final StampedLock lock = new StampedLock();
+        final long[] counters;
+
+        Shard(int size) {
+            counters = new long[PADDING + size + PADDING];
+        }
+    }
+
+    private final int matches;
+    private final Shard[] shards;
+
+    /**
+     * @param matches number of matches in the run
+     * @param parallelism number of threads expected to add games at the same time
+     */
+    public GameStatistics(int matches, int parallelism) {
+        this.matches = matches;
+        int count = Integer.highestOneBit(Math.max(1, parallelism * 2 - 1)) * 2;
+        shards = new Shard[count];
+        for (int i = 0; i < count; i++)
+            shards[i] = new Shard(matches * FIELDS);
+    }
+
+    /**
+     * Adds one finished game.
+     * @param match index of the match the game belongs to
+     * @param outcome how the game ended
+     */
+    public void add(int match, GameOutcome outcome) {
+        Shard shard = shards[shardIndex()];
+        long[] counters = shard.counters;
+        int base = PADDING + match * FIELDS;
+        int starter = outcome.isFirstBotStarted() ? 0 : 1; // the bot that was player 0
+        long stamp = shard.lock.writeLock();
+        try {
+            int winner = outcome.getWinner();
+            if (winner < 0)
+                counters[base + TIES + starter]++;
+            else if (winner == starter)
+                counters[base + WINS_AS_PLAYER0 + winner]++;
+            else
+                counters[base + WINS_AS_PLAYER1 + winner]++;
+            if (outcome.isForfeit())
+                counters[base + FORFEITS]++;
+            for (int bot = 0; bot < 2; bot++) {
+                counters[base + MOVES + bot] += outcome.getMoves(bot);
+                counters[base + THINK_NANOS + bot] += outcome.getThinkNanos(bot);
+                counters[base + LATE_MOVES + bot] += outcome.getLateMoves(bot);
+            }
+        } finally {
+            shard.lock.unlockWrite(stamp);
+        }
+    }
+
+    private int shardIndex() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (hash >>> 16) & (shards.length - 1);
+    }
+
+    /**
+     * @return the sum of all games added so far
+     */
+    public Snapshot snapshot() {
+        long[] sum = new long[matches * FIELDS];
+        long[] copy = new long[matches * FIELDS];
+        for (Shard shard : shards) {
+            long stamp = shard.lock.tryOptimisticRead();
+            System.arraycopy(shard.counters, PADDING, copy, 0, copy.length);
+            if (!shard.lock.validate(stamp)) {
+                stamp = shard.lock.readLock();
+                try {
+                    System.arraycopy(shard.counters, PADDING, copy, 0, copy.length);
+                } finally {
+                    shard.lock.unlockRead(stamp);
+                }
+            }
+            for (int i = 0; i < sum.length; i++)
+                sum[i] += copy[i];
+        }
+        return new Snapshot(matches, sum);
+    }
+
+    /**
+     * The statistics at one moment, counted from the side of each match's first bot.
+     * For the methods taking a bot, 0 is the first bot of the match and 1 the second.
+     */
+    public static final class Snapshot {
+
+        private final int matches;
+        private final long[] counters;
+
+        private Snapshot(int matches, long[] counters) {
+            this.matches = matches;
+            this.counters = counters;
+        }
+
+        private long get(int match, int field) {
+            return counters[match * FIELDS + field];
+        }
+
+        public int getMatches() {
+            return matches;
+        }
+
+        public long getWins(int match, int bot) {
+            return getWinsAsPlayer0(match, bot) + get(match, WINS_AS_PLAYER1 + bot);
+        }
+
+        /**
+         * @return the games the bot won while it was player 0, and so started
+         */
+        public long getWinsAsPlayer0(int match, int bot) {
+            return get(match, WINS_AS_PLAYER0 + bot);
+        }
+
+        public long getLosses(int match, int bot) {
+            return getWins(match, 1 - bot);
+        }
+
+        public long getTies(int match) {
+            return get(match, TIES) + get(match, TIES + 1);
+        }
+
+        /**
+         * @return the tied games in which the bot was player 0
+         */
+        public long getTiesAsPlayer0(int match, int bot) {
+            return get(match, TIES + bot);
+        }
+
+        /**
+         * @return games lost through an illegal move or a failing bot
+         */
+        public long getForfeits(int match) {
+            return get(match, FORFEITS);
+        }
+
+        public long getGames(int match) {
+            return getWins(match, 0) + getWins(match, 1) + getTies(match);
+        }
+
+        /**
+         * @return games in all matches
+         */
+        public long getGames() {
+            long games = 0;
+            for (int match = 0; match < matches; match++)
+                games += getGames(match);
+            return games;
+        }
+
+        public long getMoves(int match, int bot) {
+            return get(match, MOVES + bot);
+        }
+
+        /**
+         * @return moves made by both bots in all matches
+         */
+        public long getMoves() {
+            long moves = 0;
+            for (int match = 0; match < matches; match++)
+                moves += getMoves(match, 0) + getMoves(match, 1);
+            return moves;
+        }
+
+        /**
+         * @return the time the bot spent on its moves, in nanoseconds
+         */
+        public long getThinkNanos(int match, int bot) {
+            return get(match, THINK_NANOS + bot);
+        }
+
+        /**
+         * @return the bot's average time per move, in milliseconds
+         */
+        public double getAverageThinkMillis(int match, int bot) {
+            long moves = getMoves(match, bot);
+            return moves == 0 ? 0 : getThinkNanos(match, bot) / 1e6 / moves;
+        }
+
+        /**
+         * @return the bot's moves that took longer than the time per move
+         */
+        public long getLateMoves(int match, int bot) {
+            return get(match, LATE_MOVES + bot);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package dk.easv.bll.tournament;
+
+import dk.easv.bll.bot.IBot;
+import dk.easv.bll.bot.RemoteBot;
+import dk.easv.bll.bot.UsesAllCores;
+
+/**
+ * Two bots that play a number of games against each other.
+ */
+public class Match {
+
+    private final Class<? extends IBot> firstBot;
+    private final Class<? extends IBot> secondBot;
+
+    public Match(Class<? extends IBot> firstBot, Class<? extends IBot> secondBot) {
+        this.firstBot = firstBot;
+        this.secondBot = secondBot;
+    }
+
+    public Class<? extends IBot> getFirstBot() {
+        return firstBot;
+    }
+
+    public Class<? extends IBot> getSecondBot() {
+        return secondBot;
+    }
+
+    /**
+     * @return true if one of the bots is a RemoteBot, so the games mostly wait for I/O
+     */
+    public boolean isRemote() {
+        return isRemote(firstBot) || isRemote(secondBot);
+    }
+
+    static boolean isRemote(Class<? extends IBot> botClass) {
+        return botClass.isAnnotationPresent(RemoteBot.class);
+    }
+
+    /**
+     * @return true if one of the bots searches on every core itself, so its games
+     * should be played one at a time
+     */
+    public boolean usesAllCores() {
+        return usesAllCores(firstBot) || usesAllCores(secondBot);
+    }
+
+    static boolean usesAllCores(Class<? extends IBot> botClass) {
+        return botClass.isAnnotationPresent(UsesAllCores.class);
+    }
+
+    @Override
+    public String toString() {
+        return firstBot.getSimpleName() + " vs " + secondBot.getSimpleName();
+    }
+}
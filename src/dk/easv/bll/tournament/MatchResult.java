@@ -0,0 +1,92 @@
+package dk.easv.bll.tournament;
+
+/**
+ * The results of the games between two bots, counted from the first bot's side.
+ */
+public class MatchResult {
+
+    private final String firstBot;
+    private final String secondBot;
+    private final GameStatistics.Snapshot statistics;
+    private final int match;
+
+    /**
+     * @param firstBot name of the first bot
+     * @param secondBot name of the second bot
+     * @param statistics the statistics of the run the match was played in
+     * @param match index of the match in the run
+     */
+    public MatchResult(String firstBot, String secondBot, GameStatistics.Snapshot statistics, int match) {
+        this.firstBot = firstBot;
+        this.secondBot = secondBot;
+        this.statistics = statistics;
+        this.match = match;
+    }
+
+    public String getFirstBot() {
+        return firstBot;
+    }
+
+    public String getSecondBot() {
+        return secondBot;
+    }
+
+    public long getFirstWins() {
+        return statistics.getWins(match, 0);
+    }
+
+    public long getSecondWins() {
+        return statistics.getWins(match, 1);
+    }
+
+    public long getTies() {
+        return statistics.getTies(match);
+    }
+
+    /**
+     * @return games lost through an illegal move or a failing bot
+     */
+    public long getForfeits() {
+        return statistics.getForfeits(match);
+    }
+
+    public long getGames() {
+        return statistics.getGames(match);
+    }
+
+    /**
+     * @return moves made by both bots in all games
+     */
+    public long getMoves() {
+        return statistics.getMoves(match, 0) + statistics.getMoves(match, 1);
+    }
+
+    /**
+     * @param bot 0 for the first bot, 1 for the second
+     * @return the bot's average time per move, in milliseconds
+     */
+    public double getAverageThinkMillis(int bot) {
+        return statistics.getAverageThinkMillis(match, bot);
+    }
+
+    /**
+     * @param bot 0 for the first bot, 1 for the second
+     * @return the bot's moves that took longer than the time per move
+     */
+    public long getLateMoves(int bot) {
+        return statistics.getLateMoves(match, bot);
+    }
+
+    @Override
+    public String toString() {
+        long forfeits = getForfeits();
+        long late0 = getLateMoves(0);
+        long late1 = getLateMoves(1);
+        return String.format("%s vs %s: %d-%d, %d ties (as player 0: %d-%d)%s, %.1f/%.1f ms per move%s",
+                firstBot, secondBot, getFirstWins(), getSecondWins(), getTies(),
+                statistics.getWinsAsPlayer0(match, 0), statistics.getWinsAsPlayer0(match, 1),
+                forfeits > 0 ? ", " + forfeits + " forfeits" : "",
+                getAverageThinkMillis(0), getAverageThinkMillis(1),
+                late0 + late1 > 0 ? ", late moves " + late0 + "/" + late1 : "");
+    }
+}
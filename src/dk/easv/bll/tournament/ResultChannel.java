@@ -0,0 +1,107 @@
+package dk.easv.bll.tournament;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded ring buffer that carries results from the workers to one reader, like
+ * the GUI, which takes them in batches.
+ *
+ * Any number of threads can offer() at the same time, and an offer never blocks or
+ * waits: when the buffer is full the result is dropped and only counted. Results
+ * shown one by one are then lost, but totals kept elsewhere, like GameStatistics,
+ * still count every game. Only one thread may drain the buffer.
+ *
+ * Each slot has a sequence number telling whether it is free for the offer at a
+ * position or holds the result for the reader at that position, so writers only
+ * compete for the next position and the reader never locks.
+ */
+public class ResultChannel<T> {
+
+    private final int mask;
+    private final AtomicReferenceArray<T> items;
+    private final AtomicLongArray sequence;
+    private final AtomicLong tail = new AtomicLong(); // next position to offer to
+    private long head; // next position to read, only used by the reader
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param capacity the most results the buffer holds, rounded up to a power of two
+     */
+    public ResultChannel(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive, was " + capacity);
+        int size = Integer.highestOneBit(Math.max(1, capacity * 2 - 1));
+        mask = size - 1;
+        items = new AtomicReferenceArray<>(size);
+        sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            sequence.set(i, i);
+    }
+
+    /**
+     * Adds a result if there is room. Never blocks.
+     * @return false if the buffer was full and the result was dropped
+     */
+    public boolean offer(T item) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long free = sequence.get(slot) - position;
+            if (free == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    items.set(slot, item);
+                    sequence.set(slot, position + 1); // ready for the reader
+                    return true;
+                }
+                position = tail.get();
+            } else if (free < 0) {
+                // The slot still holds the result from one lap ago
+                dropped.increment();
+                return false;
+            } else {
+                // Another writer took this position
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Moves the waiting results to a collection, oldest first. Only one thread may
+     * call this.
+     * @param batch receives the results
+     * @param max the most results to move
+     * @return the number of results moved
+     */
+    public int drainTo(Collection<? super T> batch, int max) {
+        int count = 0;
+        while (count < max) {
+            int slot = (int) head & mask;
+            if (sequence.get(slot) != head + 1)
+                break; // empty, or a writer has the position but not yet stored its result
+            batch.add(items.get(slot));
+            items.set(slot, null);
+            sequence.set(slot, head + mask + 1); // free for the offer one lap on
+            head++;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of results dropped because the buffer was full
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return the most results the buffer holds
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,215 @@
+package dk.easv.bll.tournament;
+
+import dk.easv.bll.bot.IBot;
+import dk.easv.dal.DynamicBotClassHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plays bot against bot without the GUI, using every core.
+ *
+ * A tournament is a list of matches, each a number of games between two bots in
+ * which the bots take turns being player 0. The games are played by a GameScheduler.
+ *
+ * A bot that makes an illegal move or throws an exception loses the game. A game
+ * that can only end in a tie (see GameManager.isDeadDraw()) is stopped and counted
+ * as a tie.
+ *
+ * Run it from the project folder, where DynamicBotClassHandler finds the bots:
+ * <pre>
+ * java dk.easv.bll.tournament.Tournament [-games n] [-time ms] [-threads n] [-remoteGames n] [-pairwise] [bot ...]
+ * </pre>
+ * Without bot names every bot plays. Bots are named by class or by getBotName().
+ * -threads defaults to every core, or to 1 when a bot searches on all cores itself
+ * (see UsesAllCores), like MCTSBot. -remoteGames limits how many games with a RemoteBot are played at
+ * once, see GameScheduler.
+ */
+public class Tournament {
+
+    public enum Format {
+        /**
+         * Every bot plays every other bot.
+         */
+        ROUND_ROBIN,
+        /**
+         * The bots play in pairs as listed: the first against the second, the third
+         * against the fourth and so on.
+         */
+        PAIRWISE
+    }
+
+    private final List<Class<? extends IBot>> bots;
+    private final Format format;
+    private final int gamesPerMatch;
+    private final int timePerMove;
+    private final int threads;
+    private final int remoteGames;
+
+    /**
+     * @param bots the bots to play
+     * @param format how to pair the bots
+     * @param gamesPerMatch games between each pair
+     * @param timePerMove milliseconds per move, as IGameState.getTimePerMove()
+     * @param threads number of games to play at the same time
+     */
+    public Tournament(List<Class<? extends IBot>> bots, Format format, int gamesPerMatch, int timePerMove, int threads) {
+        this(bots, format, gamesPerMatch, timePerMove, threads, GameScheduler.DEFAULT_REMOTE_GAMES);
+    }
+
+    /**
+     * @param bots the bots to play
+     * @param format how to pair the bots
+     * @param gamesPerMatch games between each pair
+     * @param timePerMove milliseconds per move, as IGameState.getTimePerMove()
+     * @param threads number of games without a RemoteBot to play at the same time
+     * @param remoteGames number of games with a RemoteBot to play at the same time
+     */
+    public Tournament(List<Class<? extends IBot>> bots, Format format, int gamesPerMatch, int timePerMove,
+                      int threads, int remoteGames) {
+        if (format == Format.PAIRWISE && bots.size() % 2 != 0)
+            throw new IllegalArgumentException("Pairwise matches need an even number of bots, got " + bots.size());
+        if (gamesPerMatch < 1 || timePerMove < 1 || threads < 1 || remoteGames < 1)
+            throw new IllegalArgumentException("Games, time per move, threads and remote games must be positive");
+        this.bots = new ArrayList<>(bots);
+        this.format = format;
+        this.gamesPerMatch = gamesPerMatch;
+        this.timePerMove = timePerMove;
+        this.threads = threads;
+        this.remoteGames = remoteGames;
+    }
+
+    /**
+     * Plays all games, printing progress to System.out.
+     * @return the result of every match, in the order they were paired
+     */
+    public List<MatchResult> run() throws InterruptedException {
+        List<Match> matches = matches();
+        long start = System.nanoTime();
+        int reportEvery = Math.max(1, gamesPerMatch * matches.size() / 10);
+        GameScheduler scheduler = new GameScheduler(threads, remoteGames);
+        GameScheduler.Run run;
+        try {
+            run = scheduler.start(matches, gamesPerMatch, timePerMove, (current, match, outcome, completed, games) -> {
+                if (completed % reportEvery == 0 || completed == games) {
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.printf("%d/%d games, %.1f games/s%n", completed, games, completed / seconds);
+                }
+            });
+            run.await();
+        } finally {
+            scheduler.shutdown();
+        }
+
+        GameStatistics.Snapshot statistics = run.getStatistics();
+        List<MatchResult> results = new ArrayList<>();
+        for (int i = 0; i < matches.size(); i++) {
+            Match match = matches.get(i);
+            results.add(new MatchResult(match.getFirstBot().getSimpleName(), match.getSecondBot().getSimpleName(), statistics, i));
+        }
+        return results;
+    }
+
+    private List<Match> matches() {
+        List<Match> matches = new ArrayList<>();
+        if (format == Format.PAIRWISE) {
+            for (int i = 0; i + 1 < bots.size(); i += 2)
+                matches.add(new Match(bots.get(i), bots.get(i + 1)));
+        } else {
+            for (int i = 0; i < bots.size(); i++)
+                for (int j = i + 1; j < bots.size(); j++)
+                    matches.add(new Match(bots.get(i), bots.get(j)));
+        }
+        return matches;
+    }
+
+    /**
+     * Prints the results, and how fast they were played.
+     * @param results the results of run()
+     * @param nanos the time run() took
+     */
+    public static void printResults(List<MatchResult> results, long nanos) {
+        long games = 0;
+        long moves = 0;
+        for (MatchResult result : results) {
+            System.out.println(result);
+            games += result.getGames();
+            moves += result.getMoves();
+        }
+        double seconds = nanos / 1e9;
+        System.out.printf("%d games, %d moves in %.1f s: %.1f games/s, %.0f moves/s%n",
+                games, moves, seconds, games / seconds, moves / seconds);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = 100;
+        int time = 100;
+        int threads = 0; // chosen from the bots unless given
+        int remoteGames = GameScheduler.DEFAULT_REMOTE_GAMES;
+        Format format = Format.ROUND_ROBIN;
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-games":
+                    games = Integer.parseInt(args[++i]);
+                    break;
+                case "-time":
+                    time = Integer.parseInt(args[++i]);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-remoteGames":
+                    remoteGames = Integer.parseInt(args[++i]);
+                    break;
+                case "-pairwise":
+                    format = Format.PAIRWISE;
+                    break;
+                default:
+                    names.add(args[i]);
+            }
+        }
+
+        List<Class<? extends IBot>> available = DynamicBotClassHandler.loadBotClasses();
+        List<Class<? extends IBot>> bots = new ArrayList<>();
+        if (names.isEmpty())
+            bots.addAll(available);
+        Map<Class<? extends IBot>, String> botNames = new HashMap<>();
+        for (String name : names)
+            bots.add(findBot(available, botNames, name));
+        if (threads == 0) {
+            // Games side by side would only take cores from a bot that uses them all
+            boolean allCores = bots.stream().anyMatch(Match::usesAllCores);
+            threads = allCores ? 1 : Runtime.getRuntime().availableProcessors();
+        }
+
+        System.out.printf("%d bots, %s, %d games per match, %d ms per move, %d threads%n",
+                bots.size(), format, games, time, threads);
+        long start = System.nanoTime();
+        List<MatchResult> results = new Tournament(bots, format, games, time, threads, remoteGames).run();
+        printResults(results, System.nanoTime() - start);
+    }
+
+    // Finds a bot by class name, or else by getBotName(). Each class is created at most
+    // once to read its name, and the names are kept in botNames for the next lookup.
+    private static Class<? extends IBot> findBot(List<Class<? extends IBot>> available,
+                                                 Map<Class<? extends IBot>, String> botNames,
+                                                 String name) throws ReflectiveOperationException {
+        for (Class<? extends IBot> botClass : available) {
+            if (botClass.getSimpleName().equals(name))
+                return botClass;
+        }
+        for (Class<? extends IBot> botClass : available) {
+            String botName = botNames.get(botClass);
+            if (botName == null) {
+                botName = botClass.getDeclaredConstructor().newInstance().getBotName();
+                botNames.put(botClass, botName);
+            }
+            if (botName.equals(name))
+                return botClass;
+        }
+        throw new IllegalArgumentException("No bot named " + name);
+    }
+}
@@ -12,6 +12,7 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.*;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -57,6 +58,19 @@ public class DynamicBotClassHandler {
     public static ObservableList<IBot> loadBotList() throws IOException, ClassNotFoundException, InstantiationException, IllegalAccessException
     {
         ObservableList<IBot> bots = FXCollections.observableArrayList();
+        for (Class<? extends IBot> clazz : loadBotClasses())
+            bots.add(clazz.newInstance());
+        return bots;
+    }
+
+    /**
+     * Finds the bot classes in the bot folder without creating any bots or
+     * using JavaFX, so it can be used by headless tools like the tournament runner.
+     * @return the classes implementing IBot, sorted by name
+     */
+    public static List<Class<? extends IBot>> loadBotClasses() throws IOException, ClassNotFoundException
+    {
+        List<Class<? extends IBot>> classes = new ArrayList<>();
 
         Path dir = FileSystems.getDefault().getPath("./src/dk/easv/bll/bot");
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.java")) {
@@ -64,13 +78,12 @@ public class DynamicBotClassHandler {
                 String classPathAndName = "dk.easv.bll.bot." + getFilenameNoExtension(path);
                 URL[] urls = {path.toFile().toURI().toURL()};
                 ClassLoader cl = new URLClassLoader(urls);
-                Class clazz = cl.loadClass(classPathAndName);
-                if (!clazz.isInterface()) {
-                    IBot bot = (IBot) clazz.newInstance();
-                    bots.add(bot);
-                }
+                Class<?> clazz = cl.loadClass(classPathAndName);
+                if (!clazz.isInterface() && IBot.class.isAssignableFrom(clazz))
+                    classes.add(clazz.asSubclass(IBot.class));
             }
         }
-        return bots;
+        classes.sort(Comparator.comparing(Class::getSimpleName));
+        return classes;
     }
 }
@@ -2,8 +2,11 @@ package dk.easv.gui;
 
 import com.jfoenix.controls.*;
 import dk.easv.bll.bot.IBot;
-import dk.easv.bll.game.GameManager;
 import dk.easv.bll.game.stats.GameResult;
+import dk.easv.bll.tournament.GameScheduler;
+import dk.easv.bll.tournament.GameStatistics;
+import dk.easv.bll.tournament.Match;
+import dk.easv.bll.tournament.ResultChannel;
 import dk.easv.dal.DynamicBotClassHandler;
 import static dk.easv.gui.util.FontAwesomeHelper.getFontAwesomeIconFromPlayerId;
 import static dk.easv.dal.DynamicBotClassHandler.loadBotList;
@@ -14,6 +17,7 @@ import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
 import javafx.scene.control.ListCell;
 import javafx.scene.control.ToggleGroup;
 import javafx.stage.Modality;
@@ -21,14 +25,20 @@ import javafx.stage.Stage;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javafx.application.Platform;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.collections.FXCollections;
 import javafx.scene.layout.AnchorPane;
+import javafx.util.Duration;
 
 public class AppController implements Initializable {
 
@@ -64,9 +74,6 @@ public class AppController implements Initializable {
     @FXML
     private AnchorPane anchorMain;
     private BooleanProperty simulation= new SimpleBooleanProperty(false);
-    private volatile int winsBot1 = 0;
-    private volatile int winsBot2 = 0;
-    private volatile int ties = 0;
     @FXML
     private JFXToggleButton toggleBtnSim;
     @FXML
@@ -74,6 +81,17 @@ public class AppController implements Initializable {
     
     private Stage statsWindow  = null;
 
+    // Plays simulations on all cores, one game per task, or one game at a time when a
+    // bot searches on all cores itself
+    private final GameScheduler scheduler = new GameScheduler(Runtime.getRuntime().availableProcessors());
+    private final GameScheduler oneGameScheduler = new GameScheduler(1);
+    private GameScheduler.Run simulationRun;
+
+    // Finished games reach the stats window in batches, once per frame
+    private static final Duration RESULT_FRAME = Duration.millis(50);
+    private static final int RESULT_BUFFER = 4096;
+    private Timeline resultFlush;
+
     @Override
     public void initialize(URL location, ResourceBundle resources) {
 
@@ -105,11 +123,10 @@ public class AppController implements Initializable {
         comboBotsRight.getSelectionModel().selectFirst();
         comboBotsRight.setDisable(true);
         simulation.bind(toggleBtnSim.selectedProperty());
-        /*simulation.addListener((obs,old,isSelected)->{
-            if(isSelected){
-                
-            }
-        });*/
+        simulation.addListener((obs, old, isSelected) -> {
+            if (!isSelected && simulationRun != null)
+                simulationRun.cancel();
+        });
     }
 
     @FXML
@@ -146,20 +163,70 @@ public class AppController implements Initializable {
     }
 
     private void startSimulation(long amountOfSimulations) {
-        int multiCores = Runtime.getRuntime().availableProcessors();
-        winsBot1 = 0;
-        winsBot2 = 0;
-        ties = 0;
-        for (int i = 0; i < multiCores; i++) {
-            Thread t = new Thread(
-                    new Simulator(amountOfSimulations/multiCores, 
-                        this.comboBotsLeft.getValue().getClass(), 
-                        this.comboBotsRight.getValue().getClass()));
-            t.setDaemon(true);
-            t.start();
+        if (simulationRun != null)
+            simulationRun.cancel();
+        if (resultFlush != null)
+            resultFlush.stop();
+        Class<? extends IBot> bot1 = this.comboBotsLeft.getValue().getClass();
+        Class<? extends IBot> bot2 = this.comboBotsRight.getValue().getClass();
+        String name1 = this.comboBotsLeft.getValue().getBotName();
+        String name2 = this.comboBotsRight.getValue().getBotName();
+        ResultChannel<GameResult> results = new ResultChannel<>(RESULT_BUFFER);
+        Match pairing = new Match(bot1, bot2);
+        GameScheduler.Run run = (pairing.usesAllCores() ? oneGameScheduler : scheduler).start(
+                Collections.singletonList(pairing),
+                (int) amountOfSimulations,
+                BoardModel.TIME_PER_MOVE,
+                (current, match, outcome, completed, total) -> {
+                    // Player 0 and 1 are the bots as seated in this game
+                    String player0 = outcome.isFirstBotStarted() ? name1 : name2;
+                    String player1 = outcome.isFirstBotStarted() ? name2 : name1;
+                    GameResult.Winner winResult;
+                    if (outcome.getWinner() < 0)
+                        winResult = GameResult.Winner.tie;
+                    else
+                        winResult = outcome.getWinnerPlayer() == 0 ? GameResult.Winner.player0 : GameResult.Winner.player1;
+                    // Never waits; if the GUI is behind, the game is only counted in the score
+                    results.offer(new GameResult(player0, player1, winResult));
+                });
+        simulationRun = run;
+        resultFlush = new Timeline(new KeyFrame(RESULT_FRAME, e -> flushResults(run, results, name1, name2)));
+        resultFlush.setCycleCount(Animation.INDEFINITE);
+        resultFlush.play();
+    }
+
+    // Shows the games finished since the last frame, and the score so far
+    private void flushResults(GameScheduler.Run run, ResultChannel<GameResult> results, String name1, String name2) {
+        // Checked before draining, so the results of the last games are in the buffer
+        boolean done = run.isDone();
+        List<GameResult> batch = new ArrayList<>();
+        results.drainTo(batch, results.getCapacity());
+        if (!batch.isEmpty())
+            statsModel.addGameResults(batch);
+        statsModel.setLastSimulationResults(simulationResults(name1, name2, run.getStatistics(),
+                run.getCompleted(), run.getTotal(), results.getDropped()));
+        if (done) {
+            resultFlush.stop();
+            Throwable error = run.getError();
+            if (error != null)
+                showSimulationError(error);
         }
     }
 
+    private void showSimulationError(Throwable error) {
+        Logger.getLogger(AppController.class.getName()).log(Level.SEVERE, "Simulation stopped", error);
+        statsModel.setLastSimulationResults(statsModel.getLastSimulationResults() + " | stopped: " + error);
+        new Alert(Alert.AlertType.ERROR, "The simulation was stopped by an error:\n" + error).show();
+    }
+
+    private static String simulationResults(String name1, String name2, GameStatistics.Snapshot statistics,
+                                            int completed, int total, long notListed) {
+        return name1 + " vs " + name2 + " | "
+                + "w/w/t " + statistics.getWins(0, 0) + "/" + statistics.getWins(0, 1) + "/" + statistics.getTies(0)
+                + (completed < total ? " (" + completed + "/" + total + ")" : "")
+                + (notListed > 0 ? " | " + notListed + " games not listed" : "");
+    }
+
     @FXML
     private void clickSelector(ActionEvent event) {
         if(toggleLeft.getSelectedToggle()==radioLeftAI &&
@@ -174,122 +241,6 @@ public class AppController implements Initializable {
         }
     }
     
-    private class Simulator implements Runnable{
-        private final long amountOfSimulations;
-        private IBot bot1;
-        private IBot bot2;
-        public Simulator(
-                long amountOfSimulations, 
-                Class<? extends IBot> b1, 
-                Class<? extends IBot> b2) {
-
-            this.amountOfSimulations=amountOfSimulations;
-            try {
-                this.bot1 = b1.newInstance();
-                this.bot2 = b2.newInstance();
-            }
-            catch (InstantiationException ex) {
-                Logger.getLogger(AppController.class.getName()).log(Level.SEVERE, null, ex);
-            }
-            catch (IllegalAccessException ex) {
-                Logger.getLogger(AppController.class.getName()).log(Level.SEVERE, null, ex);
-            }
-        }
-        
-        @Override
-        public void run() {
-            for (int i = 0; i < amountOfSimulations/2; i++) {
-                BoardModel model = new BoardModel(bot1, bot2);
-                int currentPlayer = 0;
-                while (model.getGameOverState() == GameManager.GameOverState.Active
-                         && model.getGameState().getField().getAvailableMoves().size()>0) {
-                    currentPlayer = model.getCurrentPlayer();
-                    Boolean valid = model.doMove();
-                    if (!valid) {
-                        throw new RuntimeException("Bot not following rules!");
-                    }
-                }
-                // There is a tie
-                if (model.getGameOverState().equals(GameManager.GameOverState.Tie)) {
-                    this.addGameResult(
-                            new GameResult(
-                                    bot1.getBotName(), 
-                                    bot2.getBotName(), 
-                                    GameResult.Winner.tie));
-                    ties++;
-                }
-                else { // There is a winner
-                    GameResult.Winner winResult=null;
-                    if(currentPlayer==0) {
-                        winsBot1++;
-                        winResult = GameResult.Winner.player0;
-                    }
-                    else if(currentPlayer==1){
-                        winsBot2++;
-                        winResult = GameResult.Winner.player1;
-                    }
-                        
-                    this.addGameResult(
-                            new GameResult(
-                                    bot1.getBotName(), 
-                                    bot2.getBotName(), 
-                                    winResult));
-                }
-                
-            }
-            for (int i = 0; i < amountOfSimulations/2; i++) {
-                BoardModel model = new BoardModel(bot2, bot1);
-                int currentPlayer = 0;
-                while (model.getGameOverState() == GameManager.GameOverState.Active
-                         && model.getGameState().getField().getAvailableMoves().size()>0) {
-                    currentPlayer = model.getCurrentPlayer();
-                    Boolean valid = model.doMove();
-                    if (!valid) {
-                        throw new RuntimeException("Bot not following rules!");
-                    }
-                }
-                // There is a tie
-                if (model.getGameOverState().equals(GameManager.GameOverState.Tie)) {
-                    this.addGameResult(
-                            new GameResult(
-                                    bot2.getBotName(), 
-                                    bot1.getBotName(), 
-                                    GameResult.Winner.tie));
-                    ties++;
-                }
-                else { // There is a winner
-                    GameResult.Winner winResult=null;
-                    if(currentPlayer==0) {
-                        winsBot2++;
-                        winResult = GameResult.Winner.player0;
-                    }
-                    else if(currentPlayer==1){
-                        winsBot1++;
-                        winResult = GameResult.Winner.player1;
-                    }
-                        
-                    this.addGameResult(
-                            new GameResult(
-                                    bot2.getBotName(), 
-                                    bot1.getBotName(), 
-                                    winResult));
-                }
-                
-            }
-            setSimulationResults(bot1.getBotName() + " vs " +
-                        bot2.getBotName() + " | " +
-                        "w/w/t " + winsBot1 + "/" +
-                        winsBot2 + "/" + ties);
-        }
-        private void setSimulationResults(String result) {
-            Platform.runLater(()-> 
-                statsModel.setLastSimulationResults(result));
-        }
-        private void addGameResult(GameResult gameResult) {
-            Platform.runLater(()->
-                statsModel.addGameResult(gameResult));
-        }
-    }
     private class CustomIBotListCell extends ListCell<IBot> {
 
         @Override
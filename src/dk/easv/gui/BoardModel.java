@@ -12,7 +12,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class BoardModel implements Observable{
-    private static final int TIME_PER_MOVE = 1000; //Each bot is allowed 1000ms per move
+    static final int TIME_PER_MOVE = 1000; //Each bot is allowed 1000ms per move
     private final List<InvalidationListener> listeners = new ArrayList<>();
     private final GameManager game;
     private boolean isForced=false;
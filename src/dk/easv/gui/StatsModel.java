@@ -12,6 +12,8 @@ import javafx.beans.property.StringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
+import java.util.Collection;
+
 /**
  *
  * @author jeppjleemoritzled
@@ -43,6 +45,13 @@ public class StatsModel {
         gameResults.add(gr);
     }
 
+    /**
+     * Adds many results as one change, so the list is only redrawn once.
+     */
+    public synchronized void addGameResults(Collection<GameResult> results) {
+        gameResults.addAll(results);
+    }
+
     public void clear() {
         gameResults.clear();
     }
@@ -243,7 +243,7 @@ public class UTTTGameController implements Initializable {
                         JFXButton btn = new JFXButton("");
                         btn.setButtonType(JFXButton.ButtonType.RAISED);
                         btn.getStyleClass().add("tictaccell");
-                        btn.setUserData(new Move(x + i * 3, y + k * 3));
+                        btn.setUserData(Move.of(x + i * 3, y + k * 3));
                         btn.setFocusTraversable(false);
                         btn.setOnMouseClicked(
                                 event -> {
@@ -272,13 +272,11 @@ public class UTTTGameController implements Initializable {
 
     private void checkAndLockIfGameEnd(int currentPlayer) {
         if (model.getGameOverState() != GameManager.GameOverState.Active) {
-            String[][] macroboard = model.getMacroboard();
+            IField field = model.getGameState().getField();
             // Lock game
-            for (int i = 0; i < 3; i++) {
-                for (int k = 0; k < 3; k++) {
-                    if (macroboard[i][k].equals(IField.AVAILABLE_FIELD)) {
-                        macroboard[i][k] = IField.EMPTY_FIELD;
-                    }
+            for (int micro = 0; micro < 9; micro++) {
+                if (field.getMacroCell(micro) == IField.CELL_AVAILABLE) {
+                    field.setMacroCell(micro, IField.CELL_EMPTY);
                 }
             }
             if (model.getGameOverState().equals(GameManager.GameOverState.Tie)) {
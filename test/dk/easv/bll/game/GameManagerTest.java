@@ -0,0 +1,100 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.move.IMove;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Plays random games through the rules engine and checks what the searches rely on:
+ * that makeMove() keeps the hash equal to one computed from scratch, that undoMove()
+ * restores every position exactly, and that a dead draw can only end in a tie.
+ */
+class GameManagerTest {
+
+    private static final int GAMES = 500;
+
+    @Test
+    void makeMoveKeepsTheHashAndUndoMoveRestoresThePosition() {
+        SplittableRandom random = new SplittableRandom(1);
+        for (int game = 0; game < GAMES; game++) {
+            GameState state = new GameState();
+            GameManager manager = new GameManager(state);
+            GameSnapshot[] positions = new GameSnapshot[82];
+            long[] hashes = new long[82];
+            int plies = 0;
+            while (manager.getGameOver() == GameManager.GameOverState.Active) {
+                positions[plies] = state.snapshot();
+                hashes[plies] = state.getHash();
+                List<IMove> moves = state.getField().getAvailableMoves();
+                assertTrue(manager.makeMove(moves.get(random.nextInt(moves.size()))));
+                plies++;
+                assertEquals(Zobrist.hash(state.getField(), manager.getCurrentPlayer()), state.getHash(),
+                        "hash after move " + plies + " of game " + game);
+            }
+            assertEquals(plies, manager.getUndoDepth());
+            while (plies > 0) {
+                manager.undoMove();
+                plies--;
+                assertEquals(positions[plies], state.snapshot(), "position after undoing to move " + plies);
+                assertEquals(hashes[plies], state.getHash());
+                assertEquals(plies % 2, manager.getCurrentPlayer());
+                assertEquals(GameManager.GameOverState.Active, manager.getGameOver());
+            }
+        }
+    }
+
+    @Test
+    void undoMoveWithoutAMoveThrows() {
+        GameManager manager = new GameManager(new GameState());
+        assertThrows(IllegalStateException.class, manager::undoMove);
+    }
+
+    @Test
+    void simulatorKeepsTheHash() {
+        SplittableRandom random = new SplittableRandom(2);
+        int[] moves = new int[81];
+        for (int game = 0; game < GAMES; game++) {
+            GameSimulator simulator = new GameSimulator();
+            int count;
+            while ((count = simulator.getAvailableMoves(moves)) > 0) {
+                simulator.play(moves[random.nextInt(count)]);
+                assertEquals(Zobrist.hash(simulator.getField(), simulator.getCurrentPlayer()), simulator.getHash());
+            }
+        }
+    }
+
+    @Test
+    void deadDrawEndsInATie() {
+        SplittableRandom random = new SplittableRandom(3);
+        int deadDraws = 0;
+        for (int game = 0; game < GAMES * 4; game++) {
+            GameState state = new GameState();
+            GameManager manager = new GameManager(state);
+            while (manager.getGameOver() == GameManager.GameOverState.Active && !manager.isDeadDraw())
+                playRandomMove(manager, state, random);
+            if (!manager.isDeadDraw())
+                continue;
+            deadDraws++;
+
+            // The simulators stop here and count a tie...
+            GameSimulator simulator = new GameSimulator(state);
+            assertTrue(simulator.isDeadDraw());
+            assertEquals(-1, simulator.playout(random));
+
+            // ...and playing on, however it goes, never gives a winner
+            while (manager.getGameOver() == GameManager.GameOverState.Active)
+                playRandomMove(manager, state, random);
+            assertEquals(GameManager.GameOverState.Tie, manager.getGameOver(), "game " + game);
+        }
+        assertTrue(deadDraws > 0, "no random game reached a dead draw");
+    }
+
+    private static void playRandomMove(GameManager manager, GameState state, SplittableRandom random) {
+        List<IMove> moves = state.getField().getAvailableMoves();
+        assertTrue(manager.makeMove(moves.get(random.nextInt(moves.size()))));
+    }
+}
@@ -0,0 +1,53 @@
+package dk.easv.bll.tournament;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultChannelTest {
+
+    @Test
+    void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(1, new ResultChannel<Integer>(1).getCapacity());
+        assertEquals(8, new ResultChannel<Integer>(5).getCapacity());
+        assertEquals(8, new ResultChannel<Integer>(8).getCapacity());
+        assertThrows(IllegalArgumentException.class, () -> new ResultChannel<Integer>(0));
+    }
+
+    @Test
+    void fullChannelDropsAndCountsOffers() {
+        ResultChannel<Integer> channel = new ResultChannel<>(4);
+        for (int i = 0; i < 4; i++)
+            assertTrue(channel.offer(i));
+        assertFalse(channel.offer(4));
+        assertFalse(channel.offer(5));
+        assertEquals(2, channel.getDropped());
+
+        List<Integer> batch = new ArrayList<>();
+        assertEquals(4, channel.drainTo(batch, 10));
+        assertEquals(List.of(0, 1, 2, 3), batch);
+        assertEquals(0, channel.drainTo(batch, 10));
+    }
+
+    @Test
+    void drainedSlotsCanBeOfferedAgain() {
+        ResultChannel<Integer> channel = new ResultChannel<>(4);
+        List<Integer> batch = new ArrayList<>();
+        int next = 0;
+        // Many laps around the ring, draining part of it each time
+        for (int lap = 0; lap < 100; lap++) {
+            while (channel.offer(next))
+                next++;
+            batch.clear();
+            assertEquals(3, channel.drainTo(batch, 3));
+            assertEquals(List.of(next - 4, next - 3, next - 2), batch);
+        }
+        assertEquals(100, channel.getDropped());
+        batch.clear();
+        assertEquals(1, channel.drainTo(batch, 10));
+        assertEquals(List.of(next - 1), batch);
+    }
+}